@@ -0,0 +1,89 @@
+package com.akibazcode.customer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// 64 threads looking up random ids through the batching dao on top of an in-memory dao which takes a fixed round
+// trip per query, like a pooled connection to a nearby postgres. lookup is the throughput, queries the queries per
+// second which reached the dao. Compare window 0 (one query per lookup) with the batching windows.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(64)
+@Fork(1)
+public class BatchingCustomerDaoBenchmark {
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final int CUSTOMERS = 10_000;
+
+    @Param({"PT0S", "PT0.001S", "PT0.002S"})
+    public String window;
+
+    @Param({"100"})
+    public int maxBatchSize;
+
+    private final LongAdder queries = new LongAdder();
+    private BatchingCustomerDao underTest;
+
+    @Setup
+    public void setUp() {
+        CustomerDao customerDao = new CustomerListDataAccessService() {
+            @Override
+            public Optional<Customer> selectCustomerById(Integer customerId) {
+                queries.increment();
+                LockSupport.parkNanos(ROUND_TRIP_NANOS);
+                return super.selectCustomerById(customerId);
+            }
+
+            @Override
+            public List<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+                queries.increment();
+                LockSupport.parkNanos(ROUND_TRIP_NANOS);
+                return customerIds.stream()
+                        .map(super::selectCustomerById)
+                        .flatMap(Optional::stream)
+                        .toList();
+            }
+        };
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customerDao.insertCustomer(new Customer("customer" + i, "customer" + i + "@test.com", 30));
+        }
+        underTest = new BatchingCustomerDao(
+                customerDao, Duration.parse(window), maxBatchSize, Duration.ofSeconds(5), new SimpleMeterRegistry());
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Queries {
+        private long seen;
+        public long queries;
+
+        @Setup(Level.Iteration)
+        public void reset(BatchingCustomerDaoBenchmark benchmark) {
+            seen = benchmark.queries.sum();
+            queries = 0;
+        }
+
+        // the shared count is attributed to the first thread only, so the sum over threads is the total
+        @TearDown(Level.Iteration)
+        public void collect(BatchingCustomerDaoBenchmark benchmark, ThreadParams threadParams) {
+            queries = threadParams.getThreadIndex() == 0 ? benchmark.queries.sum() - seen : 0;
+        }
+    }
+
+    @Benchmark
+    public Optional<Customer> lookup(Queries queries) {
+        return underTest.selectCustomerById(ThreadLocalRandom.current().nextInt(1, CUSTOMERS + 1));
+    }
+}
@@ -0,0 +1,37 @@
+package com.akibazcode.customer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Serialization of the customer lists returned by GET /api/v1/customers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerJsonBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Customer> customers;
+
+    @Setup
+    public void setUp() {
+        customers = IntStream.range(0, size)
+                .mapToObj(i -> new Customer(i + 1, "customer " + i, "customer" + i + "@test.com", 20 + i % 50))
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] writeCustomers() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(customers);
+    }
+}
@@ -0,0 +1,114 @@
+package com.akibazcode.customer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Every operation against a dao holding size customers. Writes restore what they change,
+// so the size stays the same over the whole run.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerListDataAccessServiceBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private CustomerListDataAccessService underTest;
+    private long inserted;
+
+    @Setup
+    public void setUp() {
+        underTest = new CustomerListDataAccessService();
+        for (int i = 0; i < size; i++) {
+            underTest.insertCustomer(new Customer("customer " + i, "customer" + i + "@test.com", 20 + i % 50));
+        }
+    }
+
+    private int randomId() {
+        // ids 1 and 2 are the customers the dao starts with
+        return ThreadLocalRandom.current().nextInt(1, size + 3);
+    }
+
+    @Benchmark
+    public List<Customer> selectAllCustomers() {
+        return underTest.selectAllCustomers();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public List<Customer> selectCustomersAfterId() {
+        return underTest.selectCustomersAfterId(randomId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public void forEachCustomer(Blackhole blackhole) {
+        underTest.forEachCustomer(blackhole::consume);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Optional<Customer> selectCustomerById() {
+        return underTest.selectCustomerById(randomId());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean existsCustomerWithEmail() {
+        return underTest.existsCustomerWithEmail("customer" + (randomId() - 2) + "@test.com");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean existsCustomerWithId() {
+        return underTest.existsCustomerWithId(randomId());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void insertAndDeleteCustomer() {
+        Customer customer = new Customer("new customer", "new" + inserted++ + "@test.com", 30);
+        underTest.insertCustomer(customer);
+        underTest.deleteCustomerById(customer.getId());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void insertAndDeleteCustomers() {
+        List<Customer> customers = List.of(
+                new Customer("new customer", "new" + inserted++ + "@test.com", 30),
+                new Customer("new customer", "new" + inserted++ + "@test.com", 30)
+        );
+        underTest.insertCustomers(customers);
+        customers.forEach(customer -> underTest.deleteCustomerById(customer.getId()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void updateCustomerName() {
+        int id = randomId();
+        Customer customer = underTest.selectCustomerById(id).orElseThrow();
+        customer.setName(customer.getName().equals("renamed") ? "customer " + id : "renamed");
+        underTest.updateCustomer(customer);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void updateCustomerEmail() {
+        int id = randomId();
+        Customer customer = underTest.selectCustomerById(id).orElseThrow();
+        String email = customer.getEmail();
+        customer.setEmail("moved-" + email);
+        underTest.updateCustomer(customer);
+        customer.setEmail(email);
+        underTest.updateCustomer(customer);
+    }
+}
@@ -0,0 +1,41 @@
+package com.akibazcode.customer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// The ResultSet is a proxy returning fixed column values, so the score is the mapper plus a proxy call per column
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerRowMapperBenchmark {
+    private final CustomerRowMapper customerRowMapper = new CustomerRowMapper();
+    private ResultSet resultSet;
+
+    @Setup
+    public void setUp() {
+        resultSet = (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> switch (method.getName() + ":" + args[0]) {
+                    case "getInt:id" -> 1;
+                    case "getString:name" -> "Baki";
+                    case "getString:email" -> "baki@gmail.com";
+                    case "getInt:age" -> 34;
+                    case "getLong:version" -> 1L;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }
+        );
+    }
+
+    @Benchmark
+    public Customer mapRow() throws SQLException {
+        return customerRowMapper.mapRow(resultSet, 0);
+    }
+}
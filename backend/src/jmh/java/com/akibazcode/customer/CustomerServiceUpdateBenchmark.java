@@ -0,0 +1,66 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.RequestValidationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// CustomerService.updateCustomer on top of the in-memory dao, so the score is the change detection
+// and the dao calls it makes rather than a database round trip
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerServiceUpdateBenchmark {
+    private static final int CUSTOMER_ID = 1;
+
+    private CustomerService underTest;
+    private CustomerUpdateRequest unchanged;
+    private CustomerUpdateRequest[] renames;
+    private CustomerUpdateRequest[] emailChanges;
+    private int update;
+
+    @Setup
+    public void setUp() {
+        CustomerDao customerDao = new CustomerListDataAccessService();
+        CustomerSuggestIndex customerSuggestIndex = new CustomerSuggestIndex(customerDao);
+        customerSuggestIndex.rebuild();
+        CustomerStatistics customerStatistics = new CustomerStatistics(customerDao);
+        customerStatistics.reconcile();
+        underTest = new CustomerService(customerDao, customerSuggestIndex, customerStatistics);
+
+        Customer customer = customerDao.selectCustomerById(CUSTOMER_ID).orElseThrow();
+        unchanged = new CustomerUpdateRequest(customer.getName(), customer.getEmail(), customer.getAge());
+        renames = new CustomerUpdateRequest[]{
+                new CustomerUpdateRequest("renamed", null, null),
+                new CustomerUpdateRequest(customer.getName(), null, null)
+        };
+        emailChanges = new CustomerUpdateRequest[]{
+                new CustomerUpdateRequest(null, "moved-" + customer.getEmail(), null),
+                new CustomerUpdateRequest(null, customer.getEmail(), null)
+        };
+    }
+
+    @Benchmark
+    public void updateName() {
+        underTest.updateCustomer(CUSTOMER_ID, renames[update++ & 1]);
+    }
+
+    @Benchmark
+    public void updateEmail() {
+        underTest.updateCustomer(CUSTOMER_ID, emailChanges[update++ & 1]);
+    }
+
+    // a request without changes is rejected with an exception
+    @Benchmark
+    public Object updateWithoutChanges() {
+        try {
+            underTest.updateCustomer(CUSTOMER_ID, unchanged);
+            return null;
+        } catch (RequestValidationException e) {
+            return e;
+        }
+    }
+}
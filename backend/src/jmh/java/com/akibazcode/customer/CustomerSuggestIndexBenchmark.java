@@ -0,0 +1,53 @@
+package com.akibazcode.customer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Latency distribution of suggest over size customers with names drawn from a small vocabulary, so short queries
+// hit long posting lists like real first names do. Sample time reports p99, the target is below 1 ms at 10M.
+// Needs a heap of about 16g for the largest size: -Djmh.args="CustomerSuggestIndexBenchmark -jvmArgs -Xmx16g"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerSuggestIndexBenchmark {
+    private static final String[] FIRST_NAMES = {
+            "baki", "maki", "akira", "anna", "annika", "ben", "bernd", "carla", "carlos", "dana",
+            "daniel", "elif", "emre", "fatma", "felix", "greta", "hannah", "ivan", "jana", "jonas"
+    };
+    private static final String[] QUERIES = {"a", "an", "ann", "baki a", "carl", "jonas 12", "zz", "test", "elif 99"};
+
+    @Param({"100000", "1000000", "10000000"})
+    public int size;
+
+    private CustomerSuggestIndex underTest;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        CustomerDao customerDao = new CustomerListDataAccessService() {
+            @Override
+            public void forEachCustomer(Consumer<Customer> action) {
+                for (int i = 1; i <= size; i++) {
+                    String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+                    String last = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + random.nextInt(1000);
+                    action.accept(new Customer(i, first + " " + last, first + "." + last + "@test.com", 30));
+                }
+            }
+        };
+        underTest = new CustomerSuggestIndex(customerDao);
+        underTest.rebuild();
+    }
+
+    @Benchmark
+    public List<CustomerSuggestion> suggest() {
+        return underTest.suggest(QUERIES[ThreadLocalRandom.current().nextInt(QUERIES.length)], 10);
+    }
+}
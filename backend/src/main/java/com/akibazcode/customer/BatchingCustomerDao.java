@@ -0,0 +1,229 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Collects lookups by id arriving within window of each other, up to maxBatchSize ids, and answers them with one
+// selectCustomersByIds. The first caller of a batch waits out the window, runs the query on its own thread and
+// hands every caller its customer, the others wait for it. A batch which fills up is run at once. Lookups arriving
+// while a query runs start the next batch. Everything else goes straight through, so does every lookup when the
+// window is zero. Pays off with daos which answer selectCustomersByIds in one query. The other callers wait for the
+// query for at most timeout and then give up with a 503, like the waiters of SingleFlight.
+public class BatchingCustomerDao implements CustomerDao {
+    private final CustomerDao customerDao;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final long timeoutNanos;
+    private final DistributionSummary batchSizes;
+    private final Counter timeouts;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchFull = lock.newCondition();
+    // the batch new lookups join, guarded by lock
+    private Map<Integer, CompletableFuture<Optional<Customer>>> pending;
+
+    public BatchingCustomerDao(
+            CustomerDao customerDao,
+            Duration window,
+            int maxBatchSize,
+            Duration timeout,
+            MeterRegistry meterRegistry) {
+        this.customerDao = customerDao;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.timeoutNanos = timeout.toNanos();
+        this.batchSizes = DistributionSummary.builder("customer.batch.size")
+                .description("Ids looked up together in one customer dao query")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.timeouts = Counter.builder("customer.batch.timeouts")
+                .description("Lookups which gave up waiting for the query of their batch")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer customerId) {
+        if (windowNanos <= 0 || maxBatchSize <= 1) {
+            return customerDao.selectCustomerById(customerId);
+        }
+
+        Map<Integer, CompletableFuture<Optional<Customer>>> batch;
+        CompletableFuture<Optional<Customer>> lookup;
+        boolean first;
+        lock.lock();
+        try {
+            first = pending == null;
+            if (first) {
+                pending = new LinkedHashMap<>();
+            }
+            batch = pending;
+            lookup = batch.computeIfAbsent(customerId, id -> new CompletableFuture<>());
+            if (batch.size() >= maxBatchSize) {
+                pending = null;
+                batchFull.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (first) {
+            awaitWindow(batch);
+            run(batch);
+        }
+        return await(customerId, lookup);
+    }
+
+    private Optional<Customer> await(Integer customerId, CompletableFuture<Optional<Customer>> lookup) {
+        try {
+            return lookup.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            // callers see the exception of the query as if they had run it
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new ServiceUnavailableException(
+                    "Timed out waiting for customer batch [%s].".formatted(customerId)
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(
+                    "Interrupted waiting for customer batch [%s].".formatted(customerId)
+            );
+        }
+    }
+
+    // returns once the window has passed or the batch is full, no lookup can join the batch afterwards
+    private void awaitWindow(Map<Integer, CompletableFuture<Optional<Customer>>> batch) {
+        lock.lock();
+        try {
+            long remaining = windowNanos;
+            while (pending == batch && remaining > 0) {
+                remaining = batchFull.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            // run what was collected anyway, the other callers are waiting for it
+            Thread.currentThread().interrupt();
+        } finally {
+            if (pending == batch) {
+                pending = null;
+            }
+            lock.unlock();
+        }
+    }
+
+    private void run(Map<Integer, CompletableFuture<Optional<Customer>>> batch) {
+        batchSizes.record(batch.size());
+        try {
+            Map<Integer, Customer> customers = new HashMap<>();
+            for (Customer customer : customerDao.selectCustomersByIds(batch.keySet())) {
+                customers.put(customer.getId(), customer);
+            }
+            batch.forEach((id, lookup) -> lookup.complete(Optional.ofNullable(customers.get(id))));
+        } catch (RuntimeException | Error e) {
+            batch.values().forEach(lookup -> lookup.completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return customerDao.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer customerId, int limit) {
+        return customerDao.selectCustomersAfterId(customerId, limit);
+    }
+
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        customerDao.forEachCustomer(action);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearchRequest search, int limit) {
+        return customerDao.searchCustomers(search, limit);
+    }
+
+    @Override
+    public Map<Integer, Long> countCustomersByAge() {
+        return customerDao.countCustomersByAge();
+    }
+
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+        return customerDao.selectCustomersByIds(customerIds);
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        customerDao.insertCustomer(customer);
+    }
+
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        customerDao.insertCustomers(customers);
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        return customerDao.existsCustomerWithEmail(email);
+    }
+
+    @Override
+    public boolean existsCustomerWithId(Integer customerId) {
+        return customerDao.existsCustomerWithId(customerId);
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer customerId) {
+        return customerDao.deleteCustomerById(customerId);
+    }
+
+    @Override
+    public void updateCustomer(Customer update) {
+        customerDao.updateCustomer(update);
+    }
+
+    @Override
+    public CustomerPatchResult patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion) {
+        return customerDao.patchCustomer(customerId, update, expectedVersion);
+    }
+
+    @Override
+    public void deleteCustomerById(Integer customerId, long expectedVersion) {
+        customerDao.deleteCustomerById(customerId, expectedVersion);
+    }
+
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer customerId) {
+        return customerDao.selectCustomerVersion(customerId);
+    }
+
+    @Override
+    public OptionalLong selectCustomersVersion() {
+        return customerDao.selectCustomersVersion();
+    }
+}
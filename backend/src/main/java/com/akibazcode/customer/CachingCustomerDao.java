@@ -0,0 +1,254 @@
+package com.akibazcode.customer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Read-through cache in front of another dao. Caffeine bounds the size with W-TinyLFU eviction,
+// missing ids are cached as empty optionals for a shorter time so that repeated 404s stay off the database.
+// Misses for the same id share one query through a single flight, callers joining it wait at most lookupTimeout.
+public class CachingCustomerDao implements CustomerDao, MeterBinder {
+    private final CustomerDao customerDao;
+    private final Cache<Integer, Optional<Customer>> customers;
+    private final SingleFlight<Integer, Optional<Customer>> lookups;
+    // bumped by every write, a load which overlaps a write may have read the old row
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public CachingCustomerDao(
+            CustomerDao customerDao,
+            long maximumSize,
+            Duration timeToLive,
+            Duration negativeTimeToLive,
+            Duration lookupTimeout) {
+        this.customerDao = customerDao;
+        this.lookups = new SingleFlight<>("customer.lookup", lookupTimeout);
+        this.customers = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new CustomerExpiry(timeToLive, negativeTimeToLive))
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return customerDao.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer customerId, int limit) {
+        return customerDao.selectCustomersAfterId(customerId, limit);
+    }
+
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        customerDao.forEachCustomer(action);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearchRequest search, int limit) {
+        return customerDao.searchCustomers(search, limit);
+    }
+
+    @Override
+    public Map<Integer, Long> countCustomersByAge() {
+        return customerDao.countCustomersByAge();
+    }
+
+    // cached instances are never handed out, callers are free to modify what they get
+    @Override
+    public Optional<Customer> selectCustomerById(Integer customerId) {
+        Optional<Customer> customer = customers.getIfPresent(customerId);
+        if (customer == null) {
+            customer = lookups.execute(customerId, () -> load(customerId));
+        }
+        return customer.map(CachingCustomerDao::copy);
+    }
+
+    // not loaded inside Caffeine's compute, which would hold a lock of the map while the query runs
+    // and keep waiters blocked without a timeout
+    private Optional<Customer> load(Integer customerId) {
+        long before = invalidations.get();
+        Optional<Customer> customer = customerDao.selectCustomerById(customerId).map(CachingCustomerDao::copy);
+        customers.put(customerId, customer);
+        if (invalidations.get() != before) {
+            // a write may have invalidated the id before the put, do not keep what could be the old row
+            customers.invalidate(customerId);
+        }
+        return customer;
+    }
+
+    // cached ids from the cache, all others with one query whose customers are cached, missing ids as empty ones
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+        Map<Integer, Optional<Customer>> cached = customers.getAllPresent(customerIds);
+        List<Integer> misses = customerIds.stream()
+                .distinct()
+                .filter(id -> !cached.containsKey(id))
+                .toList();
+        List<Customer> found = new ArrayList<>();
+        cached.values().forEach(customer -> customer.map(CachingCustomerDao::copy).ifPresent(found::add));
+        if (misses.isEmpty()) {
+            return found;
+        }
+
+        long before = invalidations.get();
+        Map<Integer, Optional<Customer>> loaded = new HashMap<>();
+        misses.forEach(id -> loaded.put(id, Optional.empty()));
+        for (Customer customer : customerDao.selectCustomersByIds(misses)) {
+            loaded.put(customer.getId(), Optional.of(copy(customer)));
+        }
+        customers.putAll(loaded);
+        if (invalidations.get() != before) {
+            customers.invalidateAll(misses);
+        }
+        loaded.values().forEach(customer -> customer.map(CachingCustomerDao::copy).ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        customerDao.insertCustomer(customer);
+        invalidate(customer.getId());
+    }
+
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        customerDao.insertCustomers(customers);
+        invalidations.incrementAndGet();
+        this.customers.invalidateAll(customers.stream()
+                .map(Customer::getId)
+                .filter(Objects::nonNull)
+                .toList());
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        return customerDao.existsCustomerWithEmail(email);
+    }
+
+    @Override
+    public boolean existsCustomerWithId(Integer customerId) {
+        Optional<Customer> customer = customers.getIfPresent(customerId);
+        if (customer != null) {
+            return customer.isPresent();
+        }
+        return customerDao.existsCustomerWithId(customerId);
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer customerId) {
+        boolean deleted = customerDao.deleteCustomerById(customerId);
+        invalidate(customerId);
+        return deleted;
+    }
+
+    @Override
+    public void updateCustomer(Customer update) {
+        customerDao.updateCustomer(update);
+        invalidate(update.getId());
+    }
+
+    @Override
+    public CustomerPatchResult patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion) {
+        try {
+            return customerDao.patchCustomer(customerId, update, expectedVersion);
+        } finally {
+            // a failed precondition means the cached customer is stale
+            invalidate(customerId);
+        }
+    }
+
+    @Override
+    public void deleteCustomerById(Integer customerId, long expectedVersion) {
+        try {
+            customerDao.deleteCustomerById(customerId, expectedVersion);
+        } finally {
+            invalidate(customerId);
+        }
+    }
+
+    // answers conditional requests for cached customers without a query
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer customerId) {
+        Optional<Customer> customer = customers.getIfPresent(customerId);
+        if (customer != null && customer.map(Customer::getVersion).isPresent()) {
+            return customer.map(Customer::getVersion);
+        }
+        return customerDao.selectCustomerVersion(customerId);
+    }
+
+    @Override
+    public OptionalLong selectCustomersVersion() {
+        return customerDao.selectCustomersVersion();
+    }
+
+    private void invalidate(Integer customerId) {
+        invalidations.incrementAndGet();
+        customers.invalidate(customerId);
+    }
+
+    public CacheStats stats() {
+        return customers.stats();
+    }
+
+    public SingleFlight<Integer, Optional<Customer>> lookups() {
+        return lookups;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics<>(customers, "customer", Tags.empty()).bindTo(registry);
+        lookups.bindTo(registry);
+    }
+
+    private static Customer copy(Customer customer) {
+        Customer copy = new Customer(
+                customer.getId(),
+                customer.getName(),
+                customer.getEmail(),
+                customer.getAge()
+        );
+        copy.setVersion(customer.getVersion());
+        return copy;
+    }
+
+    private record CustomerExpiry(
+            Duration timeToLive,
+            Duration negativeTimeToLive
+    ) implements Expiry<Integer, Optional<Customer>> {
+
+        @Override
+        public long expireAfterCreate(Integer customerId, Optional<Customer> customer, long currentTime) {
+            return customer.isPresent() ? timeToLive.toNanos() : negativeTimeToLive.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(Integer customerId, Optional<Customer> customer,
+                                      long currentTime, long currentDuration) {
+            return expireAfterCreate(customerId, customer, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Integer customerId, Optional<Customer> customer,
+                                    long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.akibazcode.customer;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Hands out at most maxConcurrency connections at a time, a permit is held until the connection is closed.
+// With virtual threads every request can reach the pool at once, callers queue fairly on the semaphore
+// instead of failing with pool timeouts. The limit can be changed at runtime, e.g. along with the pool size.
+public class ConcurrencyLimitedDataSource extends DelegatingDataSource {
+    private final ResizableSemaphore permits;
+    private final Duration acquireTimeout;
+    private int maxConcurrency;
+
+    public ConcurrencyLimitedDataSource(DataSource targetDataSource, int maxConcurrency, Duration acquireTimeout) {
+        super(targetDataSource);
+        this.permits = new ResizableSemaphore(maxConcurrency);
+        this.acquireTimeout = acquireTimeout;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    // callers waiting for a permit
+    public int queueLength() {
+        return permits.getQueueLength();
+    }
+
+    public synchronized int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    // a lower limit takes effect as connections are closed, connections already handed out stay open
+    public synchronized void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency > this.maxConcurrency) {
+            permits.release(maxConcurrency - this.maxConcurrency);
+        } else if (maxConcurrency < this.maxConcurrency) {
+            permits.reducePermits(this.maxConcurrency - maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return releasingOnClose(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return releasingOnClose(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException(
+                        "Timed out after %sms waiting for a database permit".formatted(acquireTimeout.toMillis())
+                );
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database permit", e);
+        }
+    }
+
+    private Connection releasingOnClose(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    } finally {
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            permits.release();
+                        }
+                    }
+                }
+        );
+    }
+
+    // reducePermits is protected, it may take the available permits below zero
+    private static class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
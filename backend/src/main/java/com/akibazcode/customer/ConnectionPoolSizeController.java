@@ -0,0 +1,187 @@
+package com.akibazcode.customer;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Only active with customer.pool.adaptive.enabled=true. Every interval it compares the dao latency with its long-term
+// average, like a gradient concurrency limiter: while latency holds, connections are added as long as requests wait
+// for one, and once latency rises the pool shrinks towards what Little's law says the current load keeps busy.
+// The pool never grows past the number of requests in flight, since each request uses one connection at a time.
+// With virtual threads the limit of ConcurrencyLimitedDataSource is resized along with the pool, and requests
+// queued on it count as waiting for a connection.
+@Component
+@ConditionalOnProperty(name = "customer.pool.adaptive.enabled", havingValue = "true")
+public class ConnectionPoolSizeController {
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPoolSizeController.class);
+    // weight of the latest interval in the long-term latency average
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    private final HikariDataSource dataSource;
+    // null without virtual threads
+    private final ConcurrencyLimitedDataSource concurrencyLimit;
+    private final MeterRegistry meterRegistry;
+    private final int minSize;
+    private final int maxSize;
+    private final Duration maxAcquireWait;
+    private final Counter grows;
+    private final Counter shrinks;
+
+    private double longTermLatency = Double.NaN;
+    private long lastDaoCalls;
+    private double lastDaoNanos;
+    private long lastAcquires;
+    private double lastAcquireNanos;
+    private long lastSampleNanos = System.nanoTime();
+    // as configured, shrinking lowers the minimum idle connections with the pool and growing restores them
+    private int minimumIdle = -1;
+
+    public ConnectionPoolSizeController(
+            DataSource dataSource,
+            MeterRegistry meterRegistry,
+            @Value("${customer.pool.adaptive.min-size:5}") int minSize,
+            @Value("${customer.pool.adaptive.max-size:50}") int maxSize,
+            @Value("${customer.pool.adaptive.max-acquire-wait:5ms}") Duration maxAcquireWait) throws SQLException {
+        // the DataSource may be wrapped, e.g. by ConcurrencyLimitedDataSource
+        this.dataSource = dataSource.unwrap(HikariDataSource.class);
+        this.concurrencyLimit = dataSource instanceof ConcurrencyLimitedDataSource limited ? limited : null;
+        this.meterRegistry = meterRegistry;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxAcquireWait = maxAcquireWait;
+        this.grows = Counter.builder("customer.pool.resizes")
+                .description("Connection pool resizes made by the adaptive controller")
+                .tag("direction", "grow")
+                .register(meterRegistry);
+        this.shrinks = Counter.builder("customer.pool.resizes")
+                .description("Connection pool resizes made by the adaptive controller")
+                .tag("direction", "shrink")
+                .register(meterRegistry);
+        Gauge.builder("customer.pool.size", this.dataSource, HikariDataSource::getMaximumPoolSize)
+                .description("Maximum pool size chosen by the adaptive controller")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${customer.pool.adaptive.interval:PT10S}",
+            fixedDelayString = "${customer.pool.adaptive.interval:PT10S}"
+    )
+    public void resize() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            // the pool is only started by the first connection
+            return;
+        }
+        if (minimumIdle < 0) {
+            // only settled once the pool has started
+            minimumIdle = dataSource.getMinimumIdle();
+        }
+
+        // dao calls and connection acquires since the previous interval
+        long now = System.nanoTime();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        lastSampleNanos = now;
+        long daoCalls = 0;
+        double daoNanos = 0;
+        for (Timer timer : meterRegistry.find("customer.dao.calls").timers()) {
+            // an export holds its connection for the whole scan, its duration says nothing about the database
+            if ("forEachCustomer".equals(timer.getId().getTag("method"))) {
+                continue;
+            }
+            daoCalls += timer.count();
+            daoNanos += timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+        long acquires = 0;
+        double acquireNanos = 0;
+        for (Timer timer : meterRegistry.find("hikaricp.connections.acquire").timers()) {
+            acquires += timer.count();
+            acquireNanos += timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+        long calls = daoCalls - lastDaoCalls;
+        double latency = calls == 0 ? 0 : (daoNanos - lastDaoNanos) / calls / 1e9;
+        double acquireWait = acquires == lastAcquires ? 0 : (acquireNanos - lastAcquireNanos) / (acquires - lastAcquires) / 1e9;
+        lastDaoCalls = daoCalls;
+        lastDaoNanos = daoNanos;
+        lastAcquires = acquires;
+        lastAcquireNanos = acquireNanos;
+        if (calls == 0) {
+            return;
+        }
+        longTermLatency = Double.isNaN(longTermLatency)
+                ? latency
+                : (1 - LATENCY_SMOOTHING) * longTermLatency + LATENCY_SMOOTHING * latency;
+
+        int waiting = pool.getThreadsAwaitingConnection()
+                + (concurrencyLimit == null ? 0 : concurrencyLimit.queueLength());
+        LongTaskTimer requests = meterRegistry.find("http.server.requests.active").longTaskTimer();
+        int size = dataSource.getMaximumPoolSize();
+        int target = targetSize(new Sample(
+                size,
+                calls / seconds,
+                latency,
+                longTermLatency,
+                waiting,
+                acquireWait > maxAcquireWait.toNanos() / 1e9,
+                requests == null ? Integer.MAX_VALUE : requests.activeTasks()
+        ), minSize, maxSize);
+        if (concurrencyLimit != null) {
+            // also when the pool keeps its size, the limit starts out configured on its own
+            concurrencyLimit.setMaxConcurrency(target);
+        }
+        if (target != size) {
+            dataSource.getHikariConfigMXBean().setMaximumPoolSize(target);
+            dataSource.getHikariConfigMXBean().setMinimumIdle(Math.min(minimumIdle, target));
+            (target > size ? grows : shrinks).increment();
+            log.info("Resized connection pool from {} to {} (latency {} ms, long-term {} ms, {} calls/s, {} waiting)",
+                    size, target,
+                    "%.2f".formatted(latency * 1000), "%.2f".formatted(longTermLatency * 1000),
+                    "%.1f".formatted(calls / seconds), waiting);
+        }
+    }
+
+    static int targetSize(Sample sample, int minSize, int maxSize) {
+        // 1 while latency holds, down to 0.5 as it rises above the long-term average
+        double gradient = sample.latency() <= 0
+                ? 1.0
+                : Math.max(0.5, Math.min(1.0, sample.longTermLatency() / sample.latency()));
+        int target;
+        if (sample.waiting() > 0 || sample.slowAcquire()) {
+            // requests queue for connections, grow by a queue allowance unless the database is slowing down
+            target = (int) Math.round(sample.size() * gradient + Math.sqrt(sample.size()));
+            target = Math.min(target, Math.max(sample.inFlight(), sample.size()));
+        } else {
+            // no queueing, shrink towards the connections the load keeps busy plus the same allowance
+            double busy = sample.throughput() * sample.latency();
+            target = Math.min(sample.size(), (int) Math.ceil(busy + Math.sqrt(busy)));
+            // halve the distance each interval so one quiet interval does not empty the pool
+            target = sample.size() - (sample.size() - target) / 2;
+        }
+        return Math.max(minSize, Math.min(maxSize, target));
+    }
+
+    record Sample(
+            int size,
+            double throughput,
+            double latency,
+            double longTermLatency,
+            int waiting,
+            boolean slowAcquire,
+            int inFlight
+    ) {
+    }
+}
@@ -1,10 +1,14 @@
 package com.akibazcode.customer;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
 
 import java.util.Objects;
 
 @Entity
+@DynamicUpdate // updates write only the columns which changed
 @Table(
         name = "customer",
         uniqueConstraints = {
@@ -16,13 +20,12 @@ import java.util.Objects;
 )
 public class Customer {
     @Id
-    @SequenceGenerator(
+    @GenericGenerator(
             name = "customer_id_seq",
-            sequenceName = "customer_id_seq",
-            allocationSize = 1
+            // one round trip for 50 ids, without a sequence increment that would skip ids of the column default
+            type = CustomerIdGenerator.class
     )
     @GeneratedValue(
-            strategy = GenerationType.SEQUENCE,
             generator = "customer_id_seq")
     private Integer id;
     @Column(
@@ -37,6 +40,13 @@ public class Customer {
             nullable = false
     )
     private Integer age;
+    // null for daos which do not track versions, sent as the ETag instead of in the body
+    @Version
+    @Column(
+            nullable = false
+    )
+    @JsonIgnore
+    private Long version;
 
     public Customer() {
     }
@@ -86,6 +96,14 @@ public class Customer {
         this.age = age;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
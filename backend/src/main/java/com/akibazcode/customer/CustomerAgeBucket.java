@@ -0,0 +1,9 @@
+package com.akibazcode.customer;
+
+// customers aged minAge up to and including maxAge
+public record CustomerAgeBucket(
+        int minAge,
+        int maxAge,
+        long count
+) {
+}
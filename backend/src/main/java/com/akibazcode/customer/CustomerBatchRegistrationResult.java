@@ -0,0 +1,13 @@
+package com.akibazcode.customer;
+
+public record CustomerBatchRegistrationResult(
+        String email,
+        Integer id,
+        Status status
+) {
+    public enum Status {
+        CREATED,
+        DUPLICATE_EMAIL,
+        INVALID
+    }
+}
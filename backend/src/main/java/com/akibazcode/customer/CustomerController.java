@@ -1,53 +1,262 @@
 package com.akibazcode.customer;
 
+import com.akibazcode.exception.PreconditionFailedException;
+import com.akibazcode.exception.RequestValidationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
 
+@Profile("!reactive")
 @RestController  // Create web controller with json response body
 @RequestMapping("api/v1/customers")
 public class CustomerController {
+    static final String LIMIT_AND_IDS_MESSAGE = "Parameters limit and ids cannot be combined.";
+
     private final CustomerService customerService;
+    private final ObjectMapper objectMapper;
+    private final CustomerListSnapshotCache customerListSnapshotCache;
 
     @Autowired
-    public CustomerController(CustomerService customerService) {
+    public CustomerController(
+            CustomerService customerService,
+            ObjectMapper objectMapper,
+            CustomerListSnapshotCache customerListSnapshotCache) {
         this.customerService = customerService;
+        this.objectMapper = objectMapper;
+        this.customerListSnapshotCache = customerListSnapshotCache;
     }
 
 
-    // REST API for getting all customers
+    // REST API for getting all customers, the serialized list is written as it was cached,
+    // 304 when the table version of the cached list still matches If-None-Match
     @GetMapping
-    public List<Customer> getCustomers() {
-        return customerService.getAllCustomers();
+    public void getCustomers(
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        CustomerListSnapshotCache.Snapshot snapshot = customerListSnapshotCache.get();
+        boolean gzip = CustomerListSnapshotCache.acceptsGzip(acceptEncoding);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        // each encoding is its own representation and needs its own strong ETag
+        if (snapshot.version().isPresent()
+                && request.checkNotModified(gzip
+                        ? "\"" + snapshot.version().getAsLong() + "-gzip\""
+                        : eTag(snapshot.version().getAsLong()))) {
+            return;
+        }
+
+        byte[] body = gzip ? snapshot.gzip() : snapshot.json();
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    // REST API for getting customers page by page
+    @GetMapping(params = {"limit", "!ids"})
+    public ResponseEntity<CustomerPage> getCustomersPage(
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "limit") int limit,
+            WebRequest request
+    ) {
+        OptionalLong version = customerService.getCustomersVersion();
+        if (version.isPresent() && request.checkNotModified(eTag(version.getAsLong()))) {
+            return null;
+        }
+        return withETag(version, customerService.getCustomersPage(after, limit));
+    }
+
+    // REST API for getting many customers by id at once, ids=1,2,3
+    @GetMapping(params = {"ids", "!limit"})
+    public CustomerMultiGetResponse getCustomersByIds(
+            @RequestParam(name = "ids") List<Integer> customerIds
+    ) {
+        return customerService.getCustomersByIds(customerIds);
+    }
+
+    // a page and a pick of ids at once would otherwise fall through to the full list
+    @GetMapping(params = {"limit", "ids"})
+    public void getCustomersPageAndIds() {
+        throw new RequestValidationException(LIMIT_AND_IDS_MESSAGE);
+    }
+
+    // REST API for getting many customers by id at once, for id lists too long for a query string
+    @PostMapping("lookup")
+    public CustomerMultiGetResponse lookupCustomers(
+            @RequestBody List<Integer> customerIds) {
+        return customerService.getCustomersByIds(customerIds);
+    }
+
+    // REST API for searching customers by name prefix, email and age range
+    @GetMapping("search")
+    public List<Customer> searchCustomers(
+            @RequestParam(name = "namePrefix", required = false) String namePrefix,
+            @RequestParam(name = "email", required = false) String email,
+            @RequestParam(name = "minAge", required = false) Integer minAge,
+            @RequestParam(name = "maxAge", required = false) Integer maxAge,
+            @RequestParam(name = "limit", defaultValue = "100") int limit
+    ) {
+        return customerService.searchCustomers(
+                new CustomerSearchRequest(namePrefix, email, minAge, maxAge),
+                limit
+        );
+    }
+
+    // REST API for type-ahead over customer names and emails
+    @GetMapping("suggest")
+    public List<CustomerSuggestion> suggestCustomers(
+            @RequestParam(name = "q") String query,
+            @RequestParam(name = "limit", defaultValue = "10") int limit
+    ) {
+        return customerService.suggestCustomers(query, limit);
+    }
+
+    // REST API for customer count and age distribution
+    @GetMapping("stats")
+    public CustomerStats getCustomerStats() {
+        return customerService.getCustomerStats();
     }
 
+    // REST API for streaming all customers as NDJSON or as a JSON array
+    @GetMapping("export")
+    public ResponseEntity<StreamingResponseBody> exportCustomers(
+            @RequestParam(name = "format", defaultValue = "ndjson") String format
+    ) {
+        boolean ndjson = switch (format) {
+            case "ndjson" -> true;
+            case "json" -> false;
+            default -> throw new RequestValidationException(
+                    "Unsupported export format: [%s].".formatted(format)
+            );
+        };
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                if (ndjson) {
+                    generator.setRootValueSeparator(new SerializedString("\n"));
+                } else {
+                    generator.writeStartArray();
+                }
+                customerService.exportCustomers(customer -> {
+                    try {
+                        generator.writeObject(customer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (ndjson) {
+                    generator.writeRaw('\n');
+                } else {
+                    generator.writeEndArray();
+                }
+            }
+        };
 
-    // REST API for getting customer by id
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+
+    // REST API for getting customer by id, 304 when the version still matches If-None-Match
+    // without loading the customer
     @GetMapping("{customerId}")
-    public Customer getCustomerById(
-            @PathVariable(name = "customerId") Integer customerId
+    public ResponseEntity<Customer> getCustomerById(
+            @PathVariable(name = "customerId") Integer customerId,
+            WebRequest request
     ) {
-        return customerService.getCustomerById(customerId);
+        Optional<Long> version = customerService.getCustomerVersion(customerId);
+        if (version.isPresent() && request.checkNotModified(eTag(version.get()))) {
+            return null;
+        }
+        Customer customer = customerService.getCustomerById(customerId);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (customer.getVersion() != null) {
+            response.eTag(eTag(customer.getVersion()));
+        }
+        return response.body(customer);
     }
 
     // REST API for posting new customer
     @PostMapping
-    public void registerCustomer(@RequestBody CustomerRegistrationRequest customerRegistrationRequest) {
-        customerService.addCustomer(customerRegistrationRequest);
+    public CustomerRegistrationResponse registerCustomer(
+            @RequestBody CustomerRegistrationRequest customerRegistrationRequest) {
+        return new CustomerRegistrationResponse(
+                customerService.addCustomer(customerRegistrationRequest)
+        );
     }
 
-    // REST API for deleting customer by id
+    // REST API for posting many new customers at once
+    @PostMapping("batch")
+    public List<CustomerBatchRegistrationResult> registerCustomers(
+            @RequestBody List<CustomerRegistrationRequest> customerRegistrationRequests) {
+        return customerService.addCustomers(customerRegistrationRequests);
+    }
+
+    // REST API for deleting customer by id, only while it still matches If-Match when given
     @DeleteMapping("{customerId}")
-    public void deleteCustomerById(@PathVariable("customerId") Integer customerId) {
-        customerService.deleteCustomerById(customerId);
+    public void deleteCustomerById(
+            @PathVariable("customerId") Integer customerId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        customerService.deleteCustomerById(customerId, expectedVersion(ifMatch));
     }
 
-    // REST API for updating customer
+    // REST API for updating customer, only while it still matches If-Match when given
     @PutMapping("{customerId}")
     public void updateCustomer(
             @PathVariable("customerId") Integer customerId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody CustomerUpdateRequest customerUpdateRequest) {
-        customerService.updateCustomer(customerId, customerUpdateRequest);
+        customerService.updateCustomer(customerId, customerUpdateRequest, expectedVersion(ifMatch));
+    }
+
+    static String eTag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    // null when any version will do, otherwise the version of the single strong ETag in If-Match.
+    // Weak and unknown ETags can never match, versions are the only ETags handed out.
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            try {
+                return Long.parseLong(tag.substring(1, tag.length() - 1));
+            } catch (NumberFormatException ignored) {
+                // not one of ours
+            }
+        }
+        throw new PreconditionFailedException(
+                "If-Match does not match the current version."
+        );
+    }
+
+    private static <T> ResponseEntity<T> withETag(OptionalLong version, T body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (version.isPresent()) {
+            response.eTag(eTag(version.getAsLong()));
+        }
+        return response.body(body);
     }
 }
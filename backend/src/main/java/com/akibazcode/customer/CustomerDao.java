@@ -1,21 +1,91 @@
 package com.akibazcode.customer;
 
+import com.akibazcode.exception.PreconditionFailedException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
 
 public interface CustomerDao {
 
     List<Customer> selectAllCustomers();
 
+    List<Customer> selectCustomersAfterId(Integer customerId, int limit);
+
+    void forEachCustomer(Consumer<Customer> action);
+
     Optional<Customer> selectCustomerById(Integer customerId);
 
     void insertCustomer(Customer customer);
 
+    void insertCustomers(List<Customer> customers);
+
     boolean existsCustomerWithEmail(String email);
 
     boolean existsCustomerWithId(Integer customerId);
 
-    void deleteCustomerById(Integer customerId);
+    // true when a customer was deleted, false when there was none with that id
+    boolean deleteCustomerById(Integer customerId);
 
     void updateCustomer(Customer update);
+
+    // customers matching every filter of the search ordered by id, a filtered full scan by default
+    default List<Customer> searchCustomers(CustomerSearchRequest search, int limit) {
+        List<Customer> matches = new ArrayList<>();
+        forEachCustomer(customer -> {
+            if (search.matches(customer)) {
+                matches.add(customer);
+            }
+        });
+        matches.sort(Comparator.comparing(Customer::getId));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    // the customers of those ids which exist in no particular order, one lookup per id by default
+    default List<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+        List<Customer> customers = new ArrayList<>();
+        for (Integer customerId : customerIds) {
+            selectCustomerById(customerId).ifPresent(customers::add);
+        }
+        return customers;
+    }
+
+    // number of customers of each age, counted on a full scan by default
+    default Map<Integer, Long> countCustomersByAge() {
+        Map<Integer, Long> customersByAge = new HashMap<>();
+        forEachCustomer(customer -> customersByAge.merge(customer.getAge(), 1L, Long::sum));
+        return customersByAge;
+    }
+
+    // writes the fields of the request which are set and differ, throws DuplicateResourceException when the new
+    // email is taken and PreconditionFailedException when expectedVersion is set and the customer has another one.
+    // Compare and write have to be one atomic step, a read before the write would let concurrent writes slip in.
+    CustomerPatchResult patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion);
+
+    // throws PreconditionFailedException unless the customer exists with the expected version
+    default void deleteCustomerById(Integer customerId, long expectedVersion) {
+        Optional<Long> version = selectCustomerVersion(customerId);
+        if (version.isEmpty() || version.get() != expectedVersion) {
+            throw new PreconditionFailedException(
+                    "Customer with id: [%s] has been modified.".formatted(customerId)
+            );
+        }
+        deleteCustomerById(customerId);
+    }
+
+    // empty when the customer does not exist or the dao does not track versions
+    default Optional<Long> selectCustomerVersion(Integer customerId) {
+        return selectCustomerById(customerId).map(Customer::getVersion);
+    }
+
+    // changes whenever any customer is written, empty when the dao does not track versions
+    default OptionalLong selectCustomersVersion() {
+        return OptionalLong.empty();
+    }
 }
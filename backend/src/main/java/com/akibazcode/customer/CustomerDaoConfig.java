@@ -0,0 +1,50 @@
+package com.akibazcode.customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+// the reactive stack uses the r2dbc dao instead
+@Profile("!reactive")
+@Configuration
+public class CustomerDaoConfig {
+
+    // wraps the dao selected by customer.dao, one of the @Repository names (jdbc, jpa, list, offheap, file),
+    // metered below the cache so that the timers only see calls which reach the dao, cache misses are batched
+    // in between for the jdbc dao only, the others gain nothing from it and would only pay the window
+    @Bean("cached")
+    public CachingCustomerDao cachingCustomerDao(
+            BeanFactory beanFactory,
+            MeterRegistry meterRegistry,
+            @Value("${customer.dao:jdbc}") String customerDao,
+            @Value("${customer.cache.maximum-size:10000}") long maximumSize,
+            @Value("${customer.cache.time-to-live:10m}") Duration timeToLive,
+            @Value("${customer.cache.negative-time-to-live:30s}") Duration negativeTimeToLive,
+            @Value("${customer.cache.lookup-timeout:5s}") Duration lookupTimeout,
+            @Value("${customer.batch.window:0ms}") Duration batchWindow,
+            @Value("${customer.batch.max-size:100}") int maxBatchSize,
+            @Value("${customer.batch.timeout:5s}") Duration batchTimeout) {
+        return new CachingCustomerDao(
+                new BatchingCustomerDao(
+                        new MeteredCustomerDao(
+                                beanFactory.getBean(customerDao, CustomerDao.class),
+                                customerDao,
+                                meterRegistry
+                        ),
+                        "jdbc".equals(customerDao) ? batchWindow : Duration.ZERO,
+                        maxBatchSize,
+                        batchTimeout,
+                        meterRegistry
+                ),
+                maximumSize,
+                timeToLive,
+                negativeTimeToLive,
+                lookupTimeout
+        );
+    }
+}
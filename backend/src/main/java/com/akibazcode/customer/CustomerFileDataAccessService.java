@@ -0,0 +1,638 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Embedded store writing every change as a record to an append-only log of memory-mapped segment files.
+// Records are [int length][int crc][payload], a zero length marks the end of a segment.
+// The id -> record address index lives on the heap, is checkpointed to index.checkpoint and on restart
+// only the log written after the checkpoint is replayed. Sealed segments with little live data left are
+// compacted by copying their live records to the end of the log. Writes are not fsynced one by one,
+// segments are forced when they are sealed and whenever a checkpoint is taken.
+@Lazy
+@Repository("file")
+public class CustomerFileDataAccessService implements CustomerDao {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int SCAN_BATCH_SIZE = 1000;
+    private static final long CHECKPOINT_MAGIC = 0x435553544f4d4552L;
+    private static final String CHECKPOINT_FILE = "index.checkpoint";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // one checkpoint at a time, so that none overwrites the temporary file of another or replaces a later
+    // checkpoint with an older one, and none after close. Taken before lock, never while holding it
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    private boolean closed;
+    private final NavigableMap<Integer, Segment> segments = new TreeMap<>();
+    private final NavigableMap<Integer, Long> addressesById = new TreeMap<>();
+    private final Map<String, Integer> idsByEmail = new HashMap<>();
+    private Segment active;
+    private int nextId = 1;
+
+    public CustomerFileDataAccessService(
+            @Value("${customer.file.directory:data/customers}") Path directory,
+            @Value("${customer.file.segment-size:64MB}") DataSize segmentSize,
+            @Value("${customer.file.compaction-threshold:0.5}") double compactionThreshold) {
+        this.directory = directory;
+        this.segmentSize = Math.toIntExact(segmentSize.toBytes());
+        this.compactionThreshold = compactionThreshold;
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open customer log in " + directory, e);
+        }
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        lock.readLock().lock();
+        try {
+            return addressesById.values().stream()
+                    .map(this::customerAt)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer customerId, int limit) {
+        lock.readLock().lock();
+        try {
+            return addressesById.tailMap(customerId, false).values().stream()
+                    .limit(limit)
+                    .map(this::customerAt)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // hands out records in batches so that a slow consumer never holds the lock
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        List<Customer> batch = selectCustomersAfterId(0, SCAN_BATCH_SIZE);
+        while (!batch.isEmpty()) {
+            batch.forEach(action);
+            batch = selectCustomersAfterId(batch.get(batch.size() - 1).getId(), SCAN_BATCH_SIZE);
+        }
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer customerId) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(addressesById.get(customerId))
+                    .map(this::customerAt);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            if (!tryInsertCustomer(customer)) {
+                throw new DuplicateResourceException(
+                        "Email already taken."
+                );
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        lock.writeLock().lock();
+        try {
+            customers.forEach(this::tryInsertCustomer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        lock.readLock().lock();
+        try {
+            return idsByEmail.containsKey(email);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsCustomerWithId(Integer customerId) {
+        lock.readLock().lock();
+        try {
+            return addressesById.containsKey(customerId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer customerId) {
+        lock.writeLock().lock();
+        try {
+            if (!addressesById.containsKey(customerId)) {
+                return false;
+            }
+            append(deletePayload(customerId));
+            removeFromIndex(customerId);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateCustomer(Customer update) {
+        lock.writeLock().lock();
+        try {
+            if (addressesById.containsKey(update.getId())) {
+                writeCustomer(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // compare and write under one write lock, so a concurrent delete or update cannot slip in between.
+    // Versions are not tracked here, so no expected version can match.
+    @Override
+    public CustomerPatchResult patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion) {
+        lock.writeLock().lock();
+        try {
+            Long address = addressesById.get(customerId);
+            if (address == null) {
+                return CustomerPatchResult.NOT_FOUND;
+            }
+            if (expectedVersion != null) {
+                throw new PreconditionFailedException(
+                        "Customer with id: [%s] has been modified.".formatted(customerId)
+                );
+            }
+            Customer customer = customerAt(address);
+            int previousAge = customer.getAge();
+            if (!update.applyTo(customer)) {
+                return CustomerPatchResult.NO_CHANGES;
+            }
+            writeCustomer(customer);
+            return CustomerPatchResult.updated(previousAge);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeCustomer(Customer update) {
+        Integer owner = idsByEmail.get(update.getEmail());
+        if (owner != null && !owner.equals(update.getId())) {
+            throw new DuplicateResourceException(
+                    "Email already taken."
+            );
+        }
+        long address = append(putPayload(update.getId(), update));
+        addToIndex(update.getId(), address, update.getEmail());
+    }
+
+    @Scheduled(
+            initialDelayString = "${customer.file.checkpoint-interval:PT1M}",
+            fixedDelayString = "${customer.file.checkpoint-interval:PT1M}"
+    )
+    public void checkpoint() {
+        checkpointLock.lock();
+        try {
+            if (!closed) {
+                writeCheckpoint();
+            }
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private void writeCheckpoint() {
+        int segmentId;
+        int position;
+        int checkpointNextId;
+        int[] ids;
+        long[] addresses;
+        String[] emails;
+
+        // copy the index under the lock, write it out without blocking writers
+        lock.readLock().lock();
+        try {
+            active.buffer.force();
+            segmentId = active.id;
+            position = active.position;
+            checkpointNextId = nextId;
+            ids = new int[idsByEmail.size()];
+            addresses = new long[ids.length];
+            emails = new String[ids.length];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : idsByEmail.entrySet()) {
+                ids[i] = entry.getValue();
+                addresses[i] = addressesById.get(entry.getValue());
+                emails[i] = entry.getKey();
+                i++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc)));
+            out.writeLong(CHECKPOINT_MAGIC);
+            out.writeInt(segmentId);
+            out.writeInt(position);
+            out.writeInt(checkpointNextId);
+            out.writeInt(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                byte[] email = emails[i].getBytes(StandardCharsets.UTF_8);
+                out.writeInt(ids[i]);
+                out.writeLong(addresses[i]);
+                out.writeInt(email.length);
+                out.write(email);
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+            out.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write customer index checkpoint", e);
+        }
+        try {
+            Files.move(temporary, directory.resolve(CHECKPOINT_FILE),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write customer index checkpoint", e);
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${customer.file.compaction-interval:PT5M}",
+            fixedDelayString = "${customer.file.compaction-interval:PT5M}"
+    )
+    public void compact() {
+        List<Segment> compacted = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : new ArrayList<>(segments.headMap(active.id, false).values())) {
+                if (segment.liveBytes < compactionThreshold * segmentSize) {
+                    relocate(segment);
+                    segments.remove(segment.id);
+                    compacted.add(segment);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (compacted.isEmpty()) {
+            return;
+        }
+
+        // the checkpoint must stop pointing into the old segments before they disappear
+        checkpoint();
+        for (Segment segment : compacted) {
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not delete compacted segment " + segment.path, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        checkpointLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            writeCheckpoint();
+            closed = true;
+            lock.writeLock().lock();
+            try {
+                for (Segment segment : segments.values()) {
+                    segment.buffer.force();
+                    segment.channel.close();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private boolean tryInsertCustomer(Customer customer) {
+        if (idsByEmail.containsKey(customer.getEmail())) {
+            return false;
+        }
+        int customerId = nextId++;
+        long address = append(putPayload(customerId, customer));
+        addToIndex(customerId, address, customer.getEmail());
+        customer.setId(customerId);
+        return true;
+    }
+
+    private void open() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    int segmentId = Integer.parseInt(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(segmentId, mapSegment(segmentId));
+                }
+            }
+        }
+
+        // replay whatever was written after the checkpoint, or the whole log without one
+        int[] replayFrom = readCheckpoint();
+        if (replayFrom == null) {
+            addressesById.clear();
+            idsByEmail.clear();
+            nextId = 1;
+            replayFrom = new int[]{0, 0};
+        }
+        for (Segment segment : segments.tailMap(replayFrom[0], true).values()) {
+            segment.position = replay(segment, segment.id == replayFrom[0] ? replayFrom[1] : 0);
+        }
+
+        active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (active == null) {
+            active = mapSegment(1);
+            segments.put(active.id, active);
+        }
+        segments.values().forEach(segment -> segment.liveBytes = 0);
+        addressesById.values().forEach(address -> segmentOf(address).liveBytes += recordSize(address));
+    }
+
+    // returns {segment, position} the log has to be replayed from, or null when there is no usable checkpoint
+    private int[] readCheckpoint() throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(directory.resolve(CHECKPOINT_FILE))), crc))) {
+            if (in.readLong() != CHECKPOINT_MAGIC) {
+                return null;
+            }
+            int segmentId = in.readInt();
+            int position = in.readInt();
+            int checkpointNextId = in.readInt();
+            int count = in.readInt();
+            Map<Integer, Long> addresses = new HashMap<>();
+            Map<String, Integer> ids = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                int customerId = in.readInt();
+                long address = in.readLong();
+                byte[] email = new byte[in.readInt()];
+                in.readFully(email);
+                addresses.put(customerId, address);
+                ids.put(new String(email, StandardCharsets.UTF_8), customerId);
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                return null;
+            }
+            addressesById.putAll(addresses);
+            idsByEmail.putAll(ids);
+            nextId = checkpointNextId;
+            return new int[]{segmentId, position};
+        } catch (IOException e) {
+            // a missing or torn checkpoint is ignored, the full log is replayed instead
+            return null;
+        }
+    }
+
+    private int replay(Segment segment, int from) {
+        ByteBuffer buffer = segment.buffer;
+        int position = from;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || position + HEADER_SIZE + length > segmentSize
+                    || buffer.getInt(position + 4) != crc(buffer, position + HEADER_SIZE, length)) {
+                // torn write at the end of the log, wipe it so it is never mistaken for a record
+                for (int i = position; i < segmentSize; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                break;
+            }
+            long address = address(segment.id, position);
+            int payload = position + HEADER_SIZE;
+            int customerId = buffer.getInt(payload + 1);
+            if (buffer.get(payload) == PUT) {
+                addToIndex(customerId, address, customerAt(address).getEmail());
+            } else {
+                removeFromIndex(customerId);
+            }
+            nextId = Math.max(nextId, customerId + 1);
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    // copies live records and still needed tombstones of a sealed segment to the end of the log
+    private void relocate(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        boolean olderSegmentExists = segments.lowerKey(segment.id) != null;
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0) {
+                break;
+            }
+            long address = address(segment.id, position);
+            int payload = position + HEADER_SIZE;
+            int customerId = buffer.getInt(payload + 1);
+            Long current = addressesById.get(customerId);
+            if (buffer.get(payload) == PUT && current != null && current == address) {
+                byte[] record = new byte[length];
+                buffer.get(payload, record);
+                long relocated = append(record);
+                addressesById.put(customerId, relocated);
+                segmentOf(relocated).liveBytes += recordSize(relocated);
+            } else if (buffer.get(payload) == DELETE && olderSegmentExists && current == null) {
+                append(deletePayload(customerId));
+            }
+            position += HEADER_SIZE + length;
+        }
+        active.buffer.force();
+    }
+
+    private long append(byte[] payload) {
+        if (HEADER_SIZE + payload.length > segmentSize) {
+            throw new IllegalArgumentException("Customer record does not fit into a log segment.");
+        }
+        if (active.position + HEADER_SIZE + payload.length > segmentSize) {
+            active.buffer.force();
+            Segment next = mapSegment(active.id + 1);
+            segments.put(next.id, next);
+            active = next;
+        }
+        int position = active.position;
+        ByteBuffer buffer = active.buffer;
+        buffer.put(position + HEADER_SIZE, payload);
+        buffer.putInt(position + 4, crc(buffer, position + HEADER_SIZE, payload.length));
+        buffer.putInt(position, payload.length);
+        active.position += HEADER_SIZE + payload.length;
+        return address(active.id, position);
+    }
+
+    private void addToIndex(int customerId, long address, String email) {
+        Long previous = addressesById.put(customerId, address);
+        if (previous != null) {
+            segmentOf(previous).liveBytes -= recordSize(previous);
+            idsByEmail.remove(customerAt(previous).getEmail(), customerId);
+        }
+        segmentOf(address).liveBytes += recordSize(address);
+        idsByEmail.put(email, customerId);
+    }
+
+    private void removeFromIndex(int customerId) {
+        Long previous = addressesById.remove(customerId);
+        if (previous != null) {
+            segmentOf(previous).liveBytes -= recordSize(previous);
+            idsByEmail.remove(customerAt(previous).getEmail(), customerId);
+        }
+    }
+
+    private Customer customerAt(long address) {
+        ByteBuffer buffer = segmentOf(address).buffer;
+        int payload = (int) address + HEADER_SIZE;
+        int nameLength = buffer.getInt(payload + 9);
+        int emailOffset = payload + 13 + nameLength;
+        return new Customer(
+                buffer.getInt(payload + 1),
+                readString(buffer, payload + 13, nameLength),
+                readString(buffer, emailOffset + 4, buffer.getInt(emailOffset)),
+                buffer.getInt(payload + 5)
+        );
+    }
+
+    private Segment segmentOf(long address) {
+        return segments.get((int) (address >>> 32));
+    }
+
+    private int recordSize(long address) {
+        return HEADER_SIZE + segmentOf(address).buffer.getInt((int) address);
+    }
+
+    private Segment mapSegment(int segmentId) {
+        Path path = directory.resolve("%s%010d%s".formatted(SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(segmentId, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map customer log segment " + path, e);
+        }
+    }
+
+    private static byte[] putPayload(int customerId, Customer customer) {
+        byte[] name = customer.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] email = customer.getEmail().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 4 + 4 + 4 + name.length + 4 + email.length)
+                .put(PUT)
+                .putInt(customerId)
+                .putInt(customer.getAge())
+                .putInt(name.length)
+                .put(name)
+                .putInt(email.length)
+                .put(email)
+                .array();
+    }
+
+    private static byte[] deletePayload(int customerId) {
+        return ByteBuffer.allocate(1 + 4)
+                .put(DELETE)
+                .putInt(customerId)
+                .array();
+    }
+
+    private static long address(int segmentId, int position) {
+        return ((long) segmentId << 32) | position;
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private static String readString(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private long liveBytes;
+
+        private Segment(int id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
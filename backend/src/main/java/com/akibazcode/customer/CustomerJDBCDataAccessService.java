@@ -1,15 +1,37 @@
 package com.akibazcode.customer;
 
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Repository("jdbc")
-public class CustomerJDBCDataAccessService implements CustomerDao {
+public class CustomerJDBCDataAccessService implements CustomerDao, MeterBinder {
+    private static final int FETCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
     private final CustomerRowMapper customerRowMapper;
+    private final LongAdder rowsDeleted = new LongAdder();
+    private final LongAdder rowsUpdated = new LongAdder();
 
     public CustomerJDBCDataAccessService(
             JdbcTemplate jdbcTemplate,
@@ -21,17 +43,97 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
     @Override
     public List<Customer> selectAllCustomers() {
         var sql = """
-                SELECT id,name, email, age
+                SELECT id, name, email, age, version
                 FROM customer
                 """;
 
         return jdbcTemplate.query(sql, customerRowMapper);
     }
 
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer customerId, int limit) {
+        var sql = """
+                SELECT id, name, email, age, version
+                FROM customer
+                WHERE id > ?
+                ORDER BY id
+                LIMIT ?
+                """;
+
+        return jdbcTemplate.query(sql, customerRowMapper, customerId, limit);
+    }
+
+    // postgres only honours the fetch size inside a transaction, otherwise the whole result is buffered
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachCustomer(Consumer<Customer> action) {
+        var sql = """
+                SELECT id, name, email, age, version
+                FROM customer
+                """;
+        try (Stream<Customer> customers = jdbcTemplate.queryForStream(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(sql);
+                    statement.setFetchSize(FETCH_SIZE);
+                    return statement;
+                },
+                customerRowMapper
+        )) {
+            customers.forEach(action);
+        }
+    }
+
+    // every filter is backed by an index, see V5__Add_Customer_Search_Indexes.sql
+    @Override
+    public List<Customer> searchCustomers(CustomerSearchRequest search, int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (search.namePrefix() != null) {
+            conditions.add("lower(name) LIKE ? ESCAPE '\\'");
+            args.add(search.namePattern());
+        }
+        if (search.email() != null) {
+            conditions.add("email = ?");
+            args.add(search.email());
+        }
+        if (search.minAge() != null) {
+            conditions.add("age >= ?");
+            args.add(search.minAge());
+        }
+        if (search.maxAge() != null) {
+            conditions.add("age <= ?");
+            args.add(search.maxAge());
+        }
+        args.add(limit);
+
+        var sql = """
+                SELECT id, name, email, age, version
+                FROM customer
+                %s
+                ORDER BY id
+                LIMIT ?
+                """.formatted(conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions));
+
+        return jdbcTemplate.query(sql, customerRowMapper, args.toArray());
+    }
+
+    @Override
+    public Map<Integer, Long> countCustomersByAge() {
+        var sql = """
+                SELECT age, count(*) AS customers
+                FROM customer
+                GROUP BY age
+                """;
+        Map<Integer, Long> customersByAge = new HashMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs ->
+                customersByAge.put(rs.getInt("age"), rs.getLong("customers")));
+        return customersByAge;
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Integer customerId) {
         var sql = """
-                    SELECT id, name, email, age
+                    SELECT id, name, email, age, version
                     FROM customer
                     WHERE id = ?      
                 """; 
@@ -39,17 +141,77 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
                 .stream().findAny();
     }
 
+    // one query for any number of ids, the array keeps the statement the same whatever their count
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+        if (customerIds.isEmpty()) {
+            return List.of();
+        }
+        var sql = """
+                SELECT id, name, email, age, version
+                FROM customer
+                WHERE id = ANY(?)
+                """;
+        return jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(sql);
+                    statement.setArray(1, connection.createArrayOf("int4", customerIds.toArray()));
+                    return statement;
+                },
+                customerRowMapper
+        );
+    }
+
+    // a taken email makes the insert return no row instead of failing, so no separate lookup is needed
     @Override
     public void insertCustomer(Customer customer) {
         var sql = """
                 INSERT INTO customer (name, email, age)
-                VALUES (?, ?,?)
+                VALUES (?, ?, ?)
+                ON CONFLICT ON CONSTRAINT customer_email_unique DO NOTHING
+                RETURNING id
                 """;
-        jdbcTemplate.update(
-                sql,
-                customer.getName(),
-                customer.getEmail(),
-                customer.getAge()
+        Integer id = jdbcTemplate.query(
+                        sql,
+                        (rs, rowNum) -> rs.getInt("id"),
+                        customer.getName(),
+                        customer.getEmail(),
+                        customer.getAge()
+                ).stream()
+                .findFirst()
+                .orElseThrow(() -> new DuplicateResourceException(
+                        "Email already taken."
+                ));
+        customer.setId(id);
+    }
+
+    // single multi-row insert, rows whose email is already taken are skipped and keep a null id
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return;
+        }
+        var sql = """
+                INSERT INTO customer (name, email, age)
+                SELECT * FROM unnest(?::text[], ?::text[], ?::int[])
+                ON CONFLICT (email) DO NOTHING
+                RETURNING id, email
+                """;
+        Map<String, Customer> customersByEmail = new HashMap<>();
+        customers.forEach(customer -> customersByEmail.putIfAbsent(customer.getEmail(), customer));
+
+        jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(sql);
+                    statement.setArray(1, connection.createArrayOf(
+                            "text", customers.stream().map(Customer::getName).toArray()));
+                    statement.setArray(2, connection.createArrayOf(
+                            "text", customers.stream().map(Customer::getEmail).toArray()));
+                    statement.setArray(3, connection.createArrayOf(
+                            "int4", customers.stream().map(Customer::getAge).toArray()));
+                    return statement;
+                },
+                (RowCallbackHandler) rs -> customersByEmail.get(rs.getString("email")).setId(rs.getInt("id"))
         );
     }
 
@@ -76,21 +238,22 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
     }
 
     @Override
-    public void deleteCustomerById(Integer customerId) {
+    public boolean deleteCustomerById(Integer customerId) {
         var sql = """
                 DELETE
                 FROM customer
                 WHERE id = ?
                 """;
         int result = jdbcTemplate.update(sql, customerId);
-        System.out.println("deleteCustomerById result = " + result);
+        rowsDeleted.add(result);
+        return result > 0;
     }
 
     @Override
     public void updateCustomer(Customer update) {
         var sql = """
                     UPDATE customer
-                    SET name = ?, email = ?, age = ?
+                    SET name = ?, email = ?, age = ?, version = version + 1
                     WHERE id = ?
                 """;
         int result = jdbcTemplate.update(
@@ -100,7 +263,152 @@ public class CustomerJDBCDataAccessService implements CustomerDao {
                 update.getAge(),
                 update.getId()
         );
-        System.out.println("updateCustomer result = " + result);
+        rowsUpdated.add(result);
+    }
+
+    // one round trip, the target CTE tells a missing customer from one without changes or with another version
+    // and hands the age the customer had to the update, a taken email fails on the unique constraint. target locks
+    // the row, so under read committed it reads the version a concurrent write committed rather than the one of the
+    // statement snapshot, the same row the update re-checks. Otherwise a concurrent write would be reported as no
+    // changes instead of a version conflict.
+    @Override
+    public CustomerPatchResult patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion) {
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (update.name() != null) {
+            columns.add("name");
+            values.add(update.name());
+        }
+        if (update.email() != null) {
+            columns.add("email");
+            values.add(update.email());
+        }
+        if (update.age() != null) {
+            columns.add("age");
+            values.add(update.age());
+        }
+        if (columns.isEmpty()) {
+            Optional<Long> version = selectCustomerVersion(customerId);
+            if (version.isEmpty()) {
+                return CustomerPatchResult.NOT_FOUND;
+            }
+            checkVersion(customerId, expectedVersion, version.get());
+            return CustomerPatchResult.NO_CHANGES;
+        }
+
+        var sql = """
+                WITH target AS (
+                    SELECT id, version, age
+                    FROM customer
+                    WHERE id = ?
+                    FOR UPDATE
+                ), updated AS (
+                    UPDATE customer
+                    SET %s, version = customer.version + 1
+                    FROM target
+                    WHERE customer.id = target.id AND (%s)%s
+                    RETURNING target.age
+                )
+                SELECT (SELECT age FROM updated) AS previous_age, version
+                FROM target
+                """.formatted(
+                columns.stream().map(column -> column + " = ?").collect(Collectors.joining(", ")),
+                columns.stream()
+                        .map(column -> "customer." + column + " IS DISTINCT FROM ?")
+                        .collect(Collectors.joining(" OR ")),
+                expectedVersion == null ? "" : " AND customer.version = ?"
+        );
+        List<Object> args = new ArrayList<>();
+        args.add(customerId);
+        args.addAll(values);
+        args.addAll(values);
+        if (expectedVersion != null) {
+            args.add(expectedVersion);
+        }
+
+        // previousAge is null when nothing was updated
+        record Target(Integer previousAge, long version) {
+        }
+        List<Target> result;
+        try {
+            result = jdbcTemplate.query(
+                    sql,
+                    (rs, rowNum) -> new Target(rs.getObject("previous_age", Integer.class), rs.getLong("version")),
+                    args.toArray()
+            );
+        } catch (DuplicateKeyException e) {
+            throw new DuplicateResourceException(
+                    "Email already taken."
+            );
+        }
+        if (result.isEmpty()) {
+            return CustomerPatchResult.NOT_FOUND;
+        }
+        Target target = result.get(0);
+        checkVersion(customerId, expectedVersion, target.version());
+        if (target.previousAge() == null) {
+            return CustomerPatchResult.NO_CHANGES;
+        }
+        rowsUpdated.add(1);
+        return CustomerPatchResult.updated(target.previousAge());
+    }
+
+    @Override
+    public void deleteCustomerById(Integer customerId, long expectedVersion) {
+        var sql = """
+                DELETE
+                FROM customer
+                WHERE id = ? AND version = ?
+                """;
+        int result = jdbcTemplate.update(sql, customerId, expectedVersion);
+        rowsDeleted.add(result);
+        if (result == 0) {
+            throw new PreconditionFailedException(
+                    "Customer with id: [%s] has been modified.".formatted(customerId)
+            );
+        }
+    }
 
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer customerId) {
+        var sql = """
+                SELECT version
+                FROM customer
+                WHERE id = ?
+                """;
+        return jdbcTemplate.queryForList(sql, Long.class, customerId)
+                .stream().findAny();
+    }
+
+    @Override
+    public OptionalLong selectCustomersVersion() {
+        var sql = """
+                SELECT sum(version)
+                FROM customer_table_version
+                """;
+        Long version = jdbcTemplate.queryForObject(sql, Long.class);
+        return version == null ? OptionalLong.empty() : OptionalLong.of(version);
+    }
+
+    private static void checkVersion(Integer customerId, Long expectedVersion, long version) {
+        if (expectedVersion != null && expectedVersion != version) {
+            throw new PreconditionFailedException(
+                    "Customer with id: [%s] has been modified.".formatted(customerId)
+            );
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("customer.dao.rows.affected", rowsDeleted, LongAdder::sum)
+                .description("Rows affected by customer dao writes")
+                .tag("dao", "jdbc")
+                .tag("method", "deleteCustomerById")
+                .register(registry);
+        FunctionCounter.builder("customer.dao.rows.affected", rowsUpdated, LongAdder::sum)
+                .description("Rows affected by customer dao writes")
+                .tag("dao", "jdbc")
+                .tag("method", "updateCustomer")
+                .register(registry);
     }
 }
@@ -1,16 +1,37 @@
 package com.akibazcode.customer;
 
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.Query;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 @Repository("jpa")
 public class CustomerJPADataAccessService implements CustomerDao {
+    private static final int FETCH_SIZE = 1000;
+
     private final CustomerRepository customerRepository;
+    private final EntityManager entityManager;
 
-    public CustomerJPADataAccessService(CustomerRepository customerRepository) {
+    public CustomerJPADataAccessService(CustomerRepository customerRepository, EntityManager entityManager) {
         this.customerRepository = customerRepository;
+        this.entityManager = entityManager;
     }
 
     @Override
@@ -18,14 +39,88 @@ public class CustomerJPADataAccessService implements CustomerDao {
         return customerRepository.findAll();
     }
 
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer customerId, int limit) {
+        return customerRepository.findByIdGreaterThanOrderByIdAsc(customerId, Limit.of(limit));
+    }
+
+    // walk the table page by page so that no persistence context holds more than one page
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        List<Customer> page = selectCustomersAfterId(0, FETCH_SIZE);
+        while (!page.isEmpty()) {
+            page.forEach(action);
+            Integer lastId = page.get(page.size() - 1).getId();
+            page = selectCustomersAfterId(lastId, FETCH_SIZE);
+        }
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearchRequest search, int limit) {
+        return customerRepository.findBy(
+                CustomerRepository.matches(search),
+                query -> query.sortBy(Sort.by("id")).limit(limit).all()
+        );
+    }
+
+    @Override
+    public Map<Integer, Long> countCustomersByAge() {
+        return customerRepository.countByAge().stream()
+                .collect(Collectors.toMap(row -> (Integer) row[0], row -> (Long) row[1]));
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Integer customerId) {
         return customerRepository.findById(customerId);
     }
 
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+        return customerRepository.findAllById(customerIds);
+    }
+
     @Override
     public void insertCustomer(Customer customer) {
-        customerRepository.save(customer);
+        try {
+            customerRepository.saveAndFlush(customer);
+        } catch (DataIntegrityViolationException e) {
+            throw translateEmailConflict(e);
+        }
+    }
+
+    // emails already in the table are skipped up front. One taken by a concurrent insert in between fails the whole
+    // batch, which is then inserted row by row so that only the conflicting customers are left without id.
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        Set<String> takenEmails = customerRepository.findAllByEmailIn(
+                        customers.stream().map(Customer::getEmail).toList()
+                ).stream()
+                .map(Customer::getEmail)
+                .collect(Collectors.toSet());
+        List<Customer> newCustomers = customers.stream()
+                .filter(customer -> takenEmails.add(customer.getEmail()))
+                .toList();
+        try {
+            customerRepository.saveAllAndFlush(newCustomers);
+        } catch (DataIntegrityViolationException e) {
+            if (translateEmailConflict(e) == e) {
+                throw e;
+            }
+            newCustomers.forEach(CustomerJPADataAccessService::clearId);
+            for (Customer customer : newCustomers) {
+                try {
+                    insertCustomer(customer);
+                } catch (DuplicateResourceException duplicate) {
+                    clearId(customer);
+                }
+            }
+        }
+    }
+
+    // a rolled back insert leaves the generated id and the initial version behind
+    private static void clearId(Customer customer) {
+        customer.setId(null);
+        customer.setVersion(null);
     }
 
     @Override
@@ -39,12 +134,128 @@ public class CustomerJPADataAccessService implements CustomerDao {
     }
 
     @Override
-    public void deleteCustomerById(Integer customerId) {
-        customerRepository.deleteById(customerId);
+    @Transactional
+    public boolean deleteCustomerById(Integer customerId) {
+        return customerRepository.deleteByIdReturningCount(customerId) > 0;
+    }
+
+    @Override
+    @Transactional
+    public void deleteCustomerById(Integer customerId, long expectedVersion) {
+        if (customerRepository.deleteByIdAndVersion(customerId, expectedVersion) == 0) {
+            throw new PreconditionFailedException(
+                    "Customer with id: [%s] has been modified.".formatted(customerId)
+            );
+        }
     }
 
     @Override
     public void updateCustomer(Customer update) {
+        if (update.getVersion() == null) {
+            // without a version Spring Data takes the customer for a new one, overwrite whatever version is current
+            customerRepository.findVersionById(update.getId()).ifPresent(update::setVersion);
+        }
         customerRepository.save(update);
     }
+
+    // one native statement, the same target CTE as the jdbc patch, instead of loading the customer and flushing it.
+    // Only the columns of the request are bound, so no untyped null reaches the statement.
+    @Override
+    @Transactional
+    public CustomerPatchResult patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        if (update.name() != null) {
+            values.put("name", update.name());
+        }
+        if (update.email() != null) {
+            values.put("email", update.email());
+        }
+        if (update.age() != null) {
+            values.put("age", update.age());
+        }
+        if (values.isEmpty()) {
+            Optional<Long> version = customerRepository.findVersionById(customerId);
+            if (version.isEmpty()) {
+                return CustomerPatchResult.NOT_FOUND;
+            }
+            checkVersion(customerId, expectedVersion, version.get());
+            return CustomerPatchResult.NO_CHANGES;
+        }
+
+        var sql = """
+                WITH target AS (
+                    SELECT id, version, age
+                    FROM customer
+                    WHERE id = :id
+                    FOR UPDATE
+                ), updated AS (
+                    UPDATE customer
+                    SET %s, version = customer.version + 1
+                    FROM target
+                    WHERE customer.id = target.id AND (%s)%s
+                    RETURNING target.age
+                )
+                SELECT (SELECT age FROM updated) AS previous_age, version
+                FROM target
+                """.formatted(
+                values.keySet().stream().map(column -> column + " = :" + column).collect(Collectors.joining(", ")),
+                values.keySet().stream()
+                        .map(column -> "customer." + column + " IS DISTINCT FROM :" + column)
+                        .collect(Collectors.joining(" OR ")),
+                expectedVersion == null ? "" : " AND customer.version = :version"
+        );
+        Query query = entityManager.createNativeQuery(sql);
+        query.setParameter("id", customerId);
+        values.forEach(query::setParameter);
+        if (expectedVersion != null) {
+            query.setParameter("version", expectedVersion);
+        }
+
+        List<?> result;
+        try {
+            result = query.getResultList();
+        } catch (PersistenceException e) {
+            throw translateEmailConflict(e);
+        }
+        if (result.isEmpty()) {
+            return CustomerPatchResult.NOT_FOUND;
+        }
+        // previous age is null when nothing was updated
+        Object[] target = (Object[]) result.get(0);
+        checkVersion(customerId, expectedVersion, ((Number) target[1]).longValue());
+        if (target[0] == null) {
+            return CustomerPatchResult.NO_CHANGES;
+        }
+        return CustomerPatchResult.updated(((Number) target[0]).intValue());
+    }
+
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer customerId) {
+        return customerRepository.findVersionById(customerId);
+    }
+
+    @Override
+    public OptionalLong selectCustomersVersion() {
+        return OptionalLong.of(customerRepository.sumTableVersions());
+    }
+
+    private static void checkVersion(Integer customerId, Long expectedVersion, long version) {
+        if (expectedVersion != null && expectedVersion != version) {
+            throw new PreconditionFailedException(
+                    "Customer with id: [%s] has been modified.".formatted(customerId)
+            );
+        }
+    }
+
+    private static RuntimeException translateEmailConflict(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation
+                    && "customer_email_unique".equals(violation.getConstraintName())) {
+                return new DuplicateResourceException(
+                        "Email already taken."
+                );
+            }
+        }
+        return e;
+    }
 }
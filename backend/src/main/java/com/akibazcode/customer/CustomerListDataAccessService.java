@@ -1,80 +1,187 @@
 package com.akibazcode.customer;
 
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
 import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @Repository("list") // Creates repository bean
 public class CustomerListDataAccessService implements CustomerDao {
-    private final List<Customer> customers;
-    private Integer index = 1;
+    // customers by id, plus an email -> id index which enforces uniqueness and an ordered id set for paging
+    private final ConcurrentMap<Integer, Customer> customers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> customerIdsByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Integer> customerIds = new ConcurrentSkipListSet<>();
+    private final AtomicInteger index = new AtomicInteger(1);
 
     {
-        customers = new ArrayList<>();
         Customer baki = new Customer(
-                index++,
                 "Baki",
                 "baki@gmail.com",
                 34
         );
         Customer maki = new Customer(
-                index++,
                 "Maki",
                 "maki@gmail.com",
                 33
         );
-        customers.add(baki);
-        customers.add(maki);
+        insertCustomer(baki);
+        insertCustomer(maki);
     }
 
     @Override
     public List<Customer> selectAllCustomers() {
-        return customers;
+        return customerIds.stream()
+                .map(customers::get)
+                .filter(Objects::nonNull)
+                .map(CustomerListDataAccessService::copy)
+                .toList();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer customerId, int limit) {
+        return customerIds.tailSet(customerId, false).stream()
+                .map(customers::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .map(CustomerListDataAccessService::copy)
+                .toList();
+    }
+
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        customerIds.stream()
+                .map(customers::get)
+                .filter(Objects::nonNull)
+                .forEach(customer -> action.accept(copy(customer)));
     }
 
     @Override
     public Optional<Customer> selectCustomerById(Integer customerId) {
-        return customers.stream()
-                .filter(customer -> customer.getId().equals(customerId))
-                .findFirst();
+        return Optional.ofNullable(customers.get(customerId))
+                .map(CustomerListDataAccessService::copy);
+    }
+
+    // straight from the id map, no scan
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+        return customerIds.stream()
+                .distinct()
+                .map(customers::get)
+                .filter(Objects::nonNull)
+                .map(CustomerListDataAccessService::copy)
+                .toList();
     }
 
     @Override
     public void insertCustomer(Customer customer) {
-        customer.setId(index++);
-        customers.add(customer);
+        if (!tryInsertCustomer(customer)) {
+            throw new DuplicateResourceException(
+                    "Email already taken."
+            );
+        }
+    }
+
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        customers.forEach(this::tryInsertCustomer);
     }
 
     @Override
     public boolean existsCustomerWithEmail(String email) {
-        return customers.stream()
-                .anyMatch(customer -> customer.getEmail().equals(email));
+        return customerIdsByEmail.containsKey(email);
     }
 
     @Override
     public boolean existsCustomerWithId(Integer customerId) {
-        return customers.stream()
-                .anyMatch(customer -> customer.getId().equals(customerId));
+        return customers.containsKey(customerId);
     }
 
     @Override
-    public void deleteCustomerById(Integer customerId) {
-        customers.stream()
-                .filter(customer -> customer.getId().equals(customerId))
-                .findFirst()
-                .ifPresent(customer -> customers.remove(customer));
+    public boolean deleteCustomerById(Integer customerId) {
+        Customer removed = customers.remove(customerId);
+        if (removed == null) {
+            return false;
+        }
+        customerIdsByEmail.remove(removed.getEmail(), customerId);
+        customerIds.remove(customerId);
+        return true;
     }
 
+    // the email swap happens inside compute, so concurrent writers of the same customer are serialized
     @Override
     public void updateCustomer(Customer update) {
-        customers.stream()
-                .filter(customer -> customer.getId().equals(update.getId()))
-                .forEach(customer -> {
-                    customer.setName(update.getName());
-                    customer.setEmail(update.getEmail());
-                    customer.setAge(update.getAge());
-                });
+        customers.computeIfPresent(update.getId(), (customerId, customer) -> {
+            if (!customer.getEmail().equals(update.getEmail())) {
+                Integer owner = customerIdsByEmail.putIfAbsent(update.getEmail(), customerId);
+                if (owner != null && !owner.equals(customerId)) {
+                    throw new DuplicateResourceException(
+                            "Email already taken."
+                    );
+                }
+                customerIdsByEmail.remove(customer.getEmail(), customerId);
+            }
+            return copy(update);
+        });
+    }
+
+    // compare and write in one compute, so a concurrent delete or update cannot slip in between.
+    // Versions are not tracked here, so no expected version can match.
+    @Override
+    public CustomerPatchResult patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion) {
+        CustomerPatchResult[] result = {CustomerPatchResult.NOT_FOUND};
+        customers.computeIfPresent(customerId, (id, customer) -> {
+            if (expectedVersion != null) {
+                throw new PreconditionFailedException(
+                        "Customer with id: [%s] has been modified.".formatted(id)
+                );
+            }
+            Customer patched = copy(customer);
+            if (!update.applyTo(patched)) {
+                result[0] = CustomerPatchResult.NO_CHANGES;
+                return customer;
+            }
+            if (!customer.getEmail().equals(patched.getEmail())) {
+                Integer owner = customerIdsByEmail.putIfAbsent(patched.getEmail(), id);
+                if (owner != null && !owner.equals(id)) {
+                    throw new DuplicateResourceException(
+                            "Email already taken."
+                    );
+                }
+                customerIdsByEmail.remove(customer.getEmail(), id);
+            }
+            result[0] = CustomerPatchResult.updated(customer.getAge());
+            return patched;
+        });
+        return result[0];
+    }
+
+    private boolean tryInsertCustomer(Customer customer) {
+        int customerId = index.getAndIncrement();
+        // reserving the email first makes the uniqueness check and the insert one atomic step
+        if (customerIdsByEmail.putIfAbsent(customer.getEmail(), customerId) != null) {
+            return false;
+        }
+        customer.setId(customerId);
+        customerIds.add(customerId);
+        customers.put(customerId, copy(customer));
+        return true;
+    }
+
+    private static Customer copy(Customer customer) {
+        return new Customer(
+                customer.getId(),
+                customer.getName(),
+                customer.getEmail(),
+                customer.getAge()
+        );
     }
 }
@@ -0,0 +1,190 @@
+package com.akibazcode.customer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+// The customer list serialized once and kept as plain and gzip bytes, so serving the list is a copy of bytes instead
+// of a query plus serialization. At most one build runs at a time, in the background. Snapshots are keyed by the write
+// counter of CustomerService: after a write through the service the next reads wait on the future of a build which
+// started after the write, so clients always see their own writes, and no reader blocks a carrier thread on a
+// monitor meanwhile. Writes which bypass the service, e.g. from another instance, are picked up once the snapshot is
+// older than max-age, then the old one keeps being served while the build runs.
+@Profile("!reactive")
+@Component
+public class CustomerListSnapshotCache implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(CustomerListSnapshotCache.class);
+
+    private final CustomerService customerService;
+    private final ObjectMapper objectMapper;
+    private final Executor executor;
+    private final Duration maxAge;
+    // the running build, null while none runs
+    private final AtomicReference<CompletableFuture<Snapshot>> rebuild = new AtomicReference<>();
+    private volatile Snapshot snapshot;
+    private volatile Counter rebuilds;
+
+    public CustomerListSnapshotCache(
+            CustomerService customerService,
+            ObjectMapper objectMapper,
+            @Qualifier("applicationTaskExecutor") Executor executor,
+            @Value("${customer.snapshot.max-age:PT5S}") Duration maxAge) {
+        this.customerService = customerService;
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+        this.maxAge = maxAge;
+    }
+
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        long writes = customerService.getWriteCount();
+        if (current == null || current.writes() < writes) {
+            return awaitSnapshot(writes);
+        }
+        if (System.nanoTime() - current.builtAtNanos() > maxAge.toNanos()) {
+            rebuildAsync();
+        }
+        return current;
+    }
+
+    // a build running since before the write does not have it, then the next one is waited for
+    private Snapshot awaitSnapshot(long writes) {
+        Snapshot current = snapshot;
+        while (current == null || current.writes() < writes) {
+            try {
+                current = rebuildAsync().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return current;
+    }
+
+    // the running build, or a new one when none runs
+    private CompletableFuture<Snapshot> rebuildAsync() {
+        CompletableFuture<Snapshot> started = new CompletableFuture<>();
+        while (!rebuild.compareAndSet(null, started)) {
+            CompletableFuture<Snapshot> running = rebuild.get();
+            if (running != null) {
+                return running;
+            }
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    Snapshot built = build();
+                    snapshot = built;
+                    // cleared before completing, so that a waiter which needs a newer snapshot starts another build
+                    rebuild.set(null);
+                    started.complete(built);
+                } catch (RuntimeException e) {
+                    // keep serving the previous snapshot, the next request tries again
+                    log.warn("Rebuilding the customer list snapshot failed", e);
+                    rebuild.set(null);
+                    started.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuild.set(null);
+            started.completeExceptionally(e);
+        }
+        return started;
+    }
+
+    private Snapshot build() {
+        // read the counters before the list, a write in between makes the snapshot look stale rather than fresh
+        long writes = customerService.getWriteCount();
+        OptionalLong version = customerService.getCustomersVersion();
+        long start = System.nanoTime();
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(customerService.getAllCustomers());
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+                gzip.write(json);
+            }
+            if (rebuilds != null) {
+                rebuilds.increment();
+            }
+            return new Snapshot(writes, version, json, gzipped.toByteArray(), start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // true when the Accept-Encoding header allows gzip, either by name or through * without q=0
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(parameter.substring(2)) == 0;
+                    } catch (NumberFormatException e) {
+                        rejected = true;
+                    }
+                }
+            }
+            return !rejected;
+        }
+        return false;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        rebuilds = Counter.builder("customer.snapshot.rebuilds")
+                .description("Builds of the serialized customer list")
+                .register(registry);
+        Gauge.builder("customer.snapshot.size", this, c -> c.snapshot == null ? 0 : c.snapshot.json().length)
+                .description("Size of the serialized customer list")
+                .tag("encoding", "identity")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("customer.snapshot.size", this, c -> c.snapshot == null ? 0 : c.snapshot.gzip().length)
+                .description("Size of the serialized customer list")
+                .tag("encoding", "gzip")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    // version is the table version read before the list, empty when the dao does not track versions
+    public record Snapshot(
+            long writes,
+            OptionalLong version,
+            byte[] json,
+            byte[] gzip,
+            long builtAtNanos
+    ) {
+    }
+}
@@ -0,0 +1,9 @@
+package com.akibazcode.customer;
+
+import java.util.List;
+
+public record CustomerMultiGetResponse(
+        List<Customer> customers,
+        List<Integer> missingIds
+) {
+}
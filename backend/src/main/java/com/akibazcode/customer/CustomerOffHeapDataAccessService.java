@@ -0,0 +1,459 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Columnar in-memory store kept outside the java heap. Each row is [int id][int age][long strings address]
+// in one direct buffer, name and email are length-prefixed UTF-8 in append-only direct slabs.
+// Rows are appended in id order, deleted rows keep their id negated so the id column stays sorted.
+// Deleted rows and replaced strings are garbage. Once it exceeds compaction-threshold of the bytes written and
+// MIN_COMPACTION_GARBAGE, the write which made it so copies the live rows and strings into fresh buffers.
+@Repository("offheap")
+public class CustomerOffHeapDataAccessService implements CustomerDao, MeterBinder {
+    private static final int ROW_SIZE = 16;
+    private static final int SLAB_SIZE = 16 * 1024 * 1024;
+    private static final int SCAN_BATCH_SIZE = 1000;
+    static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+
+    private final int initialCapacity;
+    private final double compactionThreshold;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final LongAdder compactions = new LongAdder();
+    private OffHeapIntIndex rowsById;
+    private OffHeapIntIndex rowsByEmailHash;
+    private ByteBuffer rows;
+    private int rowCount;
+    private int nextId = 1;
+    // bytes appended to the slabs, and those of them which belong to replaced or deleted strings
+    private long stringBytes;
+    private long garbageStringBytes;
+    private int deletedRows;
+
+    public CustomerOffHeapDataAccessService(
+            @Value("${customer.offheap.initial-capacity:1024}") int initialCapacity,
+            @Value("${customer.offheap.compaction-threshold:0.5}") double compactionThreshold) {
+        this.initialCapacity = Math.max(1, initialCapacity);
+        this.compactionThreshold = compactionThreshold;
+        this.rows = ByteBuffer.allocateDirect(this.initialCapacity * ROW_SIZE);
+        this.rowsById = new OffHeapIntIndex(this.initialCapacity);
+        this.rowsByEmailHash = new OffHeapIntIndex(this.initialCapacity);
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        lock.readLock().lock();
+        try {
+            List<Customer> customers = new ArrayList<>(rowsById.size());
+            for (int row = 0; row < rowCount; row++) {
+                if (idAt(row) > 0) {
+                    customers.add(customerAt(row));
+                }
+            }
+            return customers;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer customerId, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Customer> customers = new ArrayList<>(Math.min(limit, SCAN_BATCH_SIZE));
+            for (int row = firstRowAfter(customerId); row < rowCount && customers.size() < limit; row++) {
+                if (idAt(row) > 0) {
+                    customers.add(customerAt(row));
+                }
+            }
+            return customers;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // hands out rows in batches so that a slow consumer never holds the lock
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        List<Customer> batch = selectCustomersAfterId(0, SCAN_BATCH_SIZE);
+        while (!batch.isEmpty()) {
+            batch.forEach(action);
+            batch = selectCustomersAfterId(batch.get(batch.size() - 1).getId(), SCAN_BATCH_SIZE);
+        }
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer customerId) {
+        lock.readLock().lock();
+        try {
+            int row = rowsById.get(customerId);
+            return row == OffHeapIntIndex.NOT_FOUND ? Optional.empty() : Optional.of(customerAt(row));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            if (!tryInsertCustomer(customer)) {
+                throw new DuplicateResourceException(
+                        "Email already taken."
+                );
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        lock.writeLock().lock();
+        try {
+            customers.forEach(this::tryInsertCustomer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        lock.readLock().lock();
+        try {
+            return rowWithEmail(email.getBytes(StandardCharsets.UTF_8)) != OffHeapIntIndex.NOT_FOUND;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsCustomerWithId(Integer customerId) {
+        lock.readLock().lock();
+        try {
+            return rowsById.get(customerId) != OffHeapIntIndex.NOT_FOUND;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer customerId) {
+        lock.writeLock().lock();
+        try {
+            int row = rowsById.get(customerId);
+            if (row == OffHeapIntIndex.NOT_FOUND) {
+                return false;
+            }
+            rowsById.remove(customerId, row);
+            rowsByEmailHash.remove(emailHashAt(row), row);
+            rows.putInt(row * ROW_SIZE, -customerId);
+            garbageStringBytes += stringsSizeAt(row);
+            deletedRows++;
+            compactIfMostlyGarbage();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateCustomer(Customer update) {
+        lock.writeLock().lock();
+        try {
+            int row = rowsById.get(update.getId());
+            if (row != OffHeapIntIndex.NOT_FOUND) {
+                writeRow(row, update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // compare and write under one write lock, so a concurrent delete or update cannot slip in between.
+    // Versions are not tracked here, so no expected version can match.
+    @Override
+    public CustomerPatchResult patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion) {
+        lock.writeLock().lock();
+        try {
+            int row = rowsById.get(customerId);
+            if (row == OffHeapIntIndex.NOT_FOUND) {
+                return CustomerPatchResult.NOT_FOUND;
+            }
+            if (expectedVersion != null) {
+                throw new PreconditionFailedException(
+                        "Customer with id: [%s] has been modified.".formatted(customerId)
+                );
+            }
+            Customer customer = customerAt(row);
+            int previousAge = customer.getAge();
+            if (!update.applyTo(customer)) {
+                return CustomerPatchResult.NO_CHANGES;
+            }
+            writeRow(row, customer);
+            return CustomerPatchResult.updated(previousAge);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeRow(int row, Customer update) {
+        byte[] email = update.getEmail().getBytes(StandardCharsets.UTF_8);
+        int emailHash = Arrays.hashCode(email);
+        int oldEmailHash = emailHashAt(row);
+        if (!emailEquals(row, email)) {
+            if (rowWithEmail(email) != OffHeapIntIndex.NOT_FOUND) {
+                throw new DuplicateResourceException(
+                        "Email already taken."
+                );
+            }
+            rowsByEmailHash.remove(oldEmailHash, row);
+            rowsByEmailHash.put(emailHash, row);
+        }
+        garbageStringBytes += stringsSizeAt(row);
+        rows.putInt(row * ROW_SIZE + 4, update.getAge());
+        rows.putLong(row * ROW_SIZE + 8, appendStrings(update.getName().getBytes(StandardCharsets.UTF_8), email));
+        compactIfMostlyGarbage();
+    }
+
+    // bytes of rows and strings written since the last compaction, garbage included
+    long usedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) rowCount * ROW_SIZE + stringBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // bytes of deleted rows and replaced strings which the next compaction gives back
+    long garbageBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) deletedRows * ROW_SIZE + garbageStringBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            compactRows();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfMostlyGarbage() {
+        long garbage = (long) deletedRows * ROW_SIZE + garbageStringBytes;
+        long used = (long) rowCount * ROW_SIZE + stringBytes;
+        if (garbage >= MIN_COMPACTION_GARBAGE && garbage > compactionThreshold * used) {
+            compactRows();
+        }
+    }
+
+    // copies the live rows in id order and their strings into fresh buffers, rows move so both indexes are rebuilt.
+    // The old buffers are freed once they are collected.
+    private void compactRows() {
+        ByteBuffer oldRows = rows;
+        List<ByteBuffer> oldSlabs = new ArrayList<>(slabs);
+        int oldRowCount = rowCount;
+        int liveRows = rowsById.size();
+        long liveStringBytes = stringBytes - garbageStringBytes;
+
+        rows = ByteBuffer.allocateDirect(Math.max(initialCapacity, liveRows) * ROW_SIZE);
+        rowsById = new OffHeapIntIndex(Math.max(initialCapacity, liveRows));
+        rowsByEmailHash = new OffHeapIntIndex(Math.max(initialCapacity, liveRows));
+        slabs.clear();
+        if (liveStringBytes > 0) {
+            slabs.add(ByteBuffer.allocateDirect((int) Math.min(SLAB_SIZE, liveStringBytes)));
+        }
+        rowCount = 0;
+        stringBytes = 0;
+        garbageStringBytes = 0;
+        deletedRows = 0;
+
+        for (int oldRow = 0; oldRow < oldRowCount; oldRow++) {
+            int customerId = oldRows.getInt(oldRow * ROW_SIZE);
+            if (customerId <= 0) {
+                continue;
+            }
+            long address = oldRows.getLong(oldRow * ROW_SIZE + 8);
+            ByteBuffer slab = oldSlabs.get((int) (address >>> 32));
+            byte[] name = bytesAt(slab, (int) address);
+            byte[] email = bytesAt(slab, (int) address + 4 + name.length);
+            int row = rowCount++;
+            rows.putInt(row * ROW_SIZE, customerId);
+            rows.putInt(row * ROW_SIZE + 4, oldRows.getInt(oldRow * ROW_SIZE + 4));
+            rows.putLong(row * ROW_SIZE + 8, appendStrings(name, email));
+            rowsById.put(customerId, row);
+            rowsByEmailHash.put(Arrays.hashCode(email), row);
+        }
+        compactions.increment();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("customer.offheap.size", this, CustomerOffHeapDataAccessService::usedBytes)
+                .baseUnit("bytes")
+                .description("Bytes of rows and strings written to the off-heap customer store")
+                .tag("state", "used")
+                .register(registry);
+        Gauge.builder("customer.offheap.size", this, CustomerOffHeapDataAccessService::garbageBytes)
+                .baseUnit("bytes")
+                .description("Bytes of rows and strings written to the off-heap customer store")
+                .tag("state", "garbage")
+                .register(registry);
+        FunctionCounter.builder("customer.offheap.compactions", compactions, LongAdder::sum)
+                .description("Compactions of the off-heap customer store")
+                .register(registry);
+    }
+
+    private boolean tryInsertCustomer(Customer customer) {
+        byte[] email = customer.getEmail().getBytes(StandardCharsets.UTF_8);
+        if (rowWithEmail(email) != OffHeapIntIndex.NOT_FOUND) {
+            return false;
+        }
+        if ((rowCount + 1) * ROW_SIZE > rows.capacity()) {
+            growRows();
+        }
+        int customerId = nextId++;
+        int row = rowCount++;
+        rows.putInt(row * ROW_SIZE, customerId);
+        rows.putInt(row * ROW_SIZE + 4, customer.getAge());
+        rows.putLong(row * ROW_SIZE + 8, appendStrings(customer.getName().getBytes(StandardCharsets.UTF_8), email));
+        rowsById.put(customerId, row);
+        rowsByEmailHash.put(Arrays.hashCode(email), row);
+        customer.setId(customerId);
+        return true;
+    }
+
+    private void growRows() {
+        long capacity = Math.min((long) rows.capacity() * 2, Integer.MAX_VALUE - Integer.MAX_VALUE % ROW_SIZE);
+        if (capacity <= rows.capacity()) {
+            throw new IllegalStateException("Off-heap customer store is full.");
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+        grown.put(rows.duplicate().clear().limit(rowCount * ROW_SIZE));
+        rows = grown;
+    }
+
+    private long appendStrings(byte[] name, byte[] email) {
+        int length = 8 + name.length + email.length;
+        ByteBuffer slab = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+        if (slab == null || slab.remaining() < length) {
+            slab = ByteBuffer.allocateDirect(Math.max(SLAB_SIZE, length));
+            slabs.add(slab);
+        }
+        int offset = slab.position();
+        slab.putInt(name.length).put(name).putInt(email.length).put(email);
+        stringBytes += length;
+        return ((long) (slabs.size() - 1) << 32) | offset;
+    }
+
+    // binary search over the id column, deleted rows are compared by their negated id
+    private int firstRowAfter(int customerId) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Math.abs(idAt(middle)) <= customerId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int rowWithEmail(byte[] email) {
+        return rowsByEmailHash.find(Arrays.hashCode(email), row -> emailEquals(row, email));
+    }
+
+    private int idAt(int row) {
+        return rows.getInt(row * ROW_SIZE);
+    }
+
+    private Customer customerAt(int row) {
+        long address = rows.getLong(row * ROW_SIZE + 8);
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int nameOffset = (int) address;
+        int nameLength = slab.getInt(nameOffset);
+        int emailOffset = nameOffset + 4 + nameLength;
+        return new Customer(
+                idAt(row),
+                readString(slab, nameOffset + 4, nameLength),
+                readString(slab, emailOffset + 4, slab.getInt(emailOffset)),
+                rows.getInt(row * ROW_SIZE + 4)
+        );
+    }
+
+    private int emailHashAt(int row) {
+        long address = rows.getLong(row * ROW_SIZE + 8);
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int nameOffset = (int) address;
+        int emailOffset = nameOffset + 4 + slab.getInt(nameOffset);
+        int emailLength = slab.getInt(emailOffset);
+        int hash = 1;
+        for (int i = 0; i < emailLength; i++) {
+            hash = 31 * hash + slab.get(emailOffset + 4 + i);
+        }
+        return hash;
+    }
+
+    // length of the [name][email] entry the row points at
+    private int stringsSizeAt(int row) {
+        long address = rows.getLong(row * ROW_SIZE + 8);
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int nameOffset = (int) address;
+        int emailOffset = nameOffset + 4 + slab.getInt(nameOffset);
+        return emailOffset + 4 + slab.getInt(emailOffset) - nameOffset;
+    }
+
+    private boolean emailEquals(int row, byte[] email) {
+        long address = rows.getLong(row * ROW_SIZE + 8);
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int nameOffset = (int) address;
+        int emailOffset = nameOffset + 4 + slab.getInt(nameOffset);
+        if (slab.getInt(emailOffset) != email.length) {
+            return false;
+        }
+        for (int i = 0; i < email.length; i++) {
+            if (slab.get(emailOffset + 4 + i) != email[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the length-prefixed bytes at offset
+    private static byte[] bytesAt(ByteBuffer slab, int offset) {
+        byte[] bytes = new byte[slab.getInt(offset)];
+        slab.get(offset + 4, bytes);
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer slab, int offset, int length) {
+        byte[] bytes = new byte[length];
+        slab.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,20 @@
+package com.akibazcode.customer;
+
+// previousAge is the age the customer had right before an update, null unless updated
+public record CustomerPatchResult(
+        Status status,
+        Integer previousAge
+) {
+    public static final CustomerPatchResult NO_CHANGES = new CustomerPatchResult(Status.NO_CHANGES, null);
+    public static final CustomerPatchResult NOT_FOUND = new CustomerPatchResult(Status.NOT_FOUND, null);
+
+    public static CustomerPatchResult updated(int previousAge) {
+        return new CustomerPatchResult(Status.UPDATED, previousAge);
+    }
+
+    public enum Status {
+        UPDATED,
+        NO_CHANGES,
+        NOT_FOUND
+    }
+}
@@ -0,0 +1,45 @@
+package com.akibazcode.customer;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+// Spring Boot's R2DBC auto-configuration is excluded in application.yml, otherwise the servlet stack would
+// get a second connection pool and a second transaction manager next to the JDBC ones
+@Profile("reactive")
+@Configuration
+public class CustomerR2dbcConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool connectionFactory(
+            @Value("${customer.r2dbc.url}") String url,
+            @Value("${customer.r2dbc.username:${spring.datasource.username}}") String username,
+            @Value("${customer.r2dbc.password:${spring.datasource.password}}") String password,
+            @Value("${customer.r2dbc.pool.initial-size:10}") int initialSize,
+            @Value("${customer.r2dbc.pool.max-size:10}") int maxSize) {
+        ConnectionFactory connectionFactory = ConnectionFactories.get(
+                ConnectionFactoryOptions.parse(url).mutate()
+                        .option(ConnectionFactoryOptions.USER, username)
+                        .option(ConnectionFactoryOptions.PASSWORD, password)
+                        .build()
+        );
+        return new ConnectionPool(
+                ConnectionPoolConfiguration.builder(connectionFactory)
+                        .initialSize(initialSize)
+                        .maxSize(maxSize)
+                        .build()
+        );
+    }
+
+    @Bean
+    public DatabaseClient databaseClient(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+}
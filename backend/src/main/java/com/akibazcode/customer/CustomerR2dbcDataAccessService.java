@@ -0,0 +1,360 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
+import io.r2dbc.spi.Readable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Profile("reactive")
+@Repository("r2dbc")
+public class CustomerR2dbcDataAccessService implements ReactiveCustomerDao {
+    // rows are pulled from a portal in batches of this size as the subscriber requests them
+    private static final int FETCH_SIZE = 1000;
+
+    private final DatabaseClient databaseClient;
+
+    public CustomerR2dbcDataAccessService(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Flux<Customer> selectAllCustomers() {
+        var sql = """
+                SELECT id, name, email, age, version
+                FROM customer
+                """;
+        return databaseClient.sql(sql)
+                .filter(statement -> statement.fetchSize(FETCH_SIZE))
+                .map(CustomerR2dbcDataAccessService::mapRow)
+                .all();
+    }
+
+    @Override
+    public Flux<Customer> selectCustomersAfterId(Integer customerId, int limit) {
+        var sql = """
+                SELECT id, name, email, age, version
+                FROM customer
+                WHERE id > :id
+                ORDER BY id
+                LIMIT :limit
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .bind("limit", limit)
+                .map(CustomerR2dbcDataAccessService::mapRow)
+                .all();
+    }
+
+    @Override
+    public Mono<Customer> selectCustomerById(Integer customerId) {
+        var sql = """
+                SELECT id, name, email, age, version
+                FROM customer
+                WHERE id = :id
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .map(CustomerR2dbcDataAccessService::mapRow)
+                .one();
+    }
+
+    @Override
+    public Flux<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+        var sql = """
+                SELECT id, name, email, age, version
+                FROM customer
+                WHERE id = ANY(:ids)
+                """;
+        return databaseClient.sql(sql)
+                .bind("ids", customerIds.toArray(Integer[]::new))
+                .map(CustomerR2dbcDataAccessService::mapRow)
+                .all();
+    }
+
+    // the same statement as the jdbc search, every filter is backed by an index
+    @Override
+    public Flux<Customer> searchCustomers(CustomerSearchRequest search, int limit) {
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> args = new HashMap<>();
+        if (search.namePrefix() != null) {
+            conditions.add("lower(name) LIKE :namePattern ESCAPE '\\'");
+            args.put("namePattern", search.namePattern());
+        }
+        if (search.email() != null) {
+            conditions.add("email = :email");
+            args.put("email", search.email());
+        }
+        if (search.minAge() != null) {
+            conditions.add("age >= :minAge");
+            args.put("minAge", search.minAge());
+        }
+        if (search.maxAge() != null) {
+            conditions.add("age <= :maxAge");
+            args.put("maxAge", search.maxAge());
+        }
+        args.put("limit", limit);
+
+        var sql = """
+                SELECT id, name, email, age, version
+                FROM customer
+                %s
+                ORDER BY id
+                LIMIT :limit
+                """.formatted(conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions));
+
+        return databaseClient.sql(sql)
+                .bindValues(args)
+                .map(CustomerR2dbcDataAccessService::mapRow)
+                .all();
+    }
+
+    @Override
+    public Mono<Map<Integer, Long>> countCustomersByAge() {
+        var sql = """
+                SELECT age, count(*) AS customers
+                FROM customer
+                GROUP BY age
+                """;
+        return databaseClient.sql(sql)
+                .map(row -> Map.entry(row.get("age", Integer.class), row.get("customers", Long.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    // a taken email makes the insert return no row instead of failing, so no separate lookup is needed
+    @Override
+    public Mono<Customer> insertCustomer(Customer customer) {
+        var sql = """
+                INSERT INTO customer (name, email, age)
+                VALUES (:name, :email, :age)
+                ON CONFLICT ON CONSTRAINT customer_email_unique DO NOTHING
+                RETURNING id
+                """;
+        return databaseClient.sql(sql)
+                .bind("name", customer.getName())
+                .bind("email", customer.getEmail())
+                .bind("age", customer.getAge())
+                .map(row -> row.get("id", Integer.class))
+                .one()
+                .switchIfEmpty(Mono.error(() -> new DuplicateResourceException(
+                        "Email already taken."
+                )))
+                .map(id -> {
+                    customer.setId(id);
+                    return customer;
+                });
+    }
+
+    @Override
+    public Mono<Boolean> existsCustomerWithEmail(String email) {
+        var sql = """
+                SELECT EXISTS (SELECT 1 FROM customer WHERE email = :email) AS found
+                """;
+        return databaseClient.sql(sql)
+                .bind("email", email)
+                .map(row -> row.get("found", Boolean.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Boolean> existsCustomerWithId(Integer customerId) {
+        var sql = """
+                SELECT EXISTS (SELECT 1 FROM customer WHERE id = :id) AS found
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .map(row -> row.get("found", Boolean.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Boolean> deleteCustomerById(Integer customerId) {
+        var sql = """
+                DELETE
+                FROM customer
+                WHERE id = :id
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .fetch()
+                .rowsUpdated()
+                .map(rows -> rows > 0);
+    }
+
+    // one round trip, target tells a missing customer from one with another version
+    @Override
+    public Mono<Boolean> deleteCustomerById(Integer customerId, long expectedVersion) {
+        var sql = """
+                WITH target AS (
+                    SELECT id, version
+                    FROM customer
+                    WHERE id = :id
+                    FOR UPDATE
+                ), deleted AS (
+                    DELETE
+                    FROM customer
+                    USING target
+                    WHERE customer.id = target.id AND customer.version = :version
+                    RETURNING customer.id
+                )
+                SELECT version, EXISTS (SELECT 1 FROM deleted) AS deleted
+                FROM target
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .bind("version", expectedVersion)
+                .map(row -> row.get("deleted", Boolean.class))
+                .one()
+                .map(deleted -> {
+                    if (!deleted) {
+                        throw new PreconditionFailedException(
+                                "Customer with id: [%s] has been modified.".formatted(customerId)
+                        );
+                    }
+                    return true;
+                })
+                .defaultIfEmpty(false);
+    }
+
+    @Override
+    public Mono<Void> updateCustomer(Customer update) {
+        var sql = """
+                UPDATE customer
+                SET name = :name, email = :email, age = :age, version = version + 1
+                WHERE id = :id
+                """;
+        return databaseClient.sql(sql)
+                .bind("name", update.getName())
+                .bind("email", update.getEmail())
+                .bind("age", update.getAge())
+                .bind("id", update.getId())
+                .then()
+                .onErrorMap(DuplicateKeyException.class, e -> new DuplicateResourceException(
+                        "Email already taken."
+                ));
+    }
+
+    // the same statement as the jdbc patch, see CustomerJDBCDataAccessService.patchCustomer
+    @Override
+    public Mono<CustomerPatchResult> patchCustomer(
+            Integer customerId, CustomerUpdateRequest update, Long expectedVersion) {
+        Map<String, Object> values = new HashMap<>();
+        if (update.name() != null) {
+            values.put("name", update.name());
+        }
+        if (update.email() != null) {
+            values.put("email", update.email());
+        }
+        if (update.age() != null) {
+            values.put("age", update.age());
+        }
+        if (values.isEmpty()) {
+            return selectCustomerVersion(customerId)
+                    .map(version -> {
+                        checkVersion(customerId, expectedVersion, version);
+                        return CustomerPatchResult.NO_CHANGES;
+                    })
+                    .defaultIfEmpty(CustomerPatchResult.NOT_FOUND);
+        }
+
+        var sql = """
+                WITH target AS (
+                    SELECT id, version, age
+                    FROM customer
+                    WHERE id = :id
+                    FOR UPDATE
+                ), updated AS (
+                    UPDATE customer
+                    SET %s, version = customer.version + 1
+                    FROM target
+                    WHERE customer.id = target.id AND (%s)%s
+                    RETURNING target.age
+                )
+                SELECT (SELECT age FROM updated) AS previous_age, version
+                FROM target
+                """.formatted(
+                values.keySet().stream().map(column -> column + " = :" + column).collect(Collectors.joining(", ")),
+                values.keySet().stream()
+                        .map(column -> "customer." + column + " IS DISTINCT FROM :" + column)
+                        .collect(Collectors.joining(" OR ")),
+                expectedVersion == null ? "" : " AND customer.version = :version"
+        );
+        Map<String, Object> args = new HashMap<>(values);
+        args.put("id", customerId);
+        if (expectedVersion != null) {
+            args.put("version", expectedVersion);
+        }
+
+        // previousAge is null when nothing was updated
+        record Target(Integer previousAge, long version) {
+        }
+        return databaseClient.sql(sql)
+                .bindValues(args)
+                .map(row -> new Target(row.get("previous_age", Integer.class), row.get("version", Long.class)))
+                .one()
+                .map(target -> {
+                    checkVersion(customerId, expectedVersion, target.version());
+                    return target.previousAge() == null
+                            ? CustomerPatchResult.NO_CHANGES
+                            : CustomerPatchResult.updated(target.previousAge());
+                })
+                .defaultIfEmpty(CustomerPatchResult.NOT_FOUND)
+                .onErrorMap(DuplicateKeyException.class, e -> new DuplicateResourceException(
+                        "Email already taken."
+                ));
+    }
+
+    @Override
+    public Mono<Long> selectCustomersVersion() {
+        var sql = """
+                SELECT coalesce(sum(version), 0)::bigint AS version
+                FROM customer_table_version
+                """;
+        return databaseClient.sql(sql)
+                .map(row -> row.get("version", Long.class))
+                .one();
+    }
+
+    private Mono<Long> selectCustomerVersion(Integer customerId) {
+        var sql = """
+                SELECT version
+                FROM customer
+                WHERE id = :id
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .map(row -> row.get("version", Long.class))
+                .one();
+    }
+
+    private static void checkVersion(Integer customerId, Long expectedVersion, long version) {
+        if (expectedVersion != null && expectedVersion != version) {
+            throw new PreconditionFailedException(
+                    "Customer with id: [%s] has been modified.".formatted(customerId)
+            );
+        }
+    }
+
+    private static Customer mapRow(Readable row) {
+        Customer customer = new Customer(
+                row.get("id", Integer.class),
+                row.get("name", String.class),
+                row.get("email", String.class),
+                row.get("age", Integer.class)
+        );
+        customer.setVersion(row.get("version", Long.class));
+        return customer;
+    }
+}
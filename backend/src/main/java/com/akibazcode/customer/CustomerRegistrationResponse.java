@@ -0,0 +1,6 @@
+package com.akibazcode.customer;
+
+public record CustomerRegistrationResponse(
+        Integer id
+) {
+}
@@ -1,10 +1,65 @@
 package com.akibazcode.customer;
 
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface CustomerRepository extends JpaRepository<Customer, Integer> {
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface CustomerRepository extends JpaRepository<Customer, Integer>, JpaSpecificationExecutor<Customer> {
+
+    // renders the same conditions as the jdbc dao, so the indexes of V5__Add_Customer_Search_Indexes.sql apply
+    static Specification<Customer> matches(CustomerSearchRequest search) {
+        return (root, query, builder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (search.namePrefix() != null) {
+                predicates.add(builder.like(builder.lower(root.<String>get("name")), search.namePattern(), '\\'));
+            }
+            if (search.email() != null) {
+                predicates.add(builder.equal(root.<String>get("email"), search.email()));
+            }
+            if (search.minAge() != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.<Integer>get("age"), search.minAge()));
+            }
+            if (search.maxAge() != null) {
+                predicates.add(builder.lessThanOrEqualTo(root.<Integer>get("age"), search.maxAge()));
+            }
+            return builder.and(predicates.toArray(Predicate[]::new));
+        };
+    }
 
     boolean existsCustomerByEmail(String email);
 
     boolean existsCustomerById(Integer customerId);
+
+    List<Customer> findAllByEmailIn(Collection<String> emails);
+
+    List<Customer> findByIdGreaterThanOrderByIdAsc(Integer customerId, Limit limit);
+
+    @Query("select c.version from Customer c where c.id = :customerId")
+    Optional<Long> findVersionById(@Param("customerId") Integer customerId);
+
+    // the slots are bumped by a trigger on every write to the customer table, see V4__Add_Customer_Versions.sql
+    @Query(value = "SELECT sum(version) FROM customer_table_version", nativeQuery = true)
+    long sumTableVersions();
+
+    // rows of age and number of customers
+    @Query("select c.age, count(c) from Customer c group by c.age")
+    List<Object[]> countByAge();
+
+    @Modifying
+    @Query("delete from Customer c where c.id = :customerId")
+    int deleteByIdReturningCount(@Param("customerId") Integer customerId);
+
+    @Modifying
+    @Query("delete from Customer c where c.id = :customerId and c.version = :version")
+    int deleteByIdAndVersion(@Param("customerId") Integer customerId, @Param("version") long version);
 }
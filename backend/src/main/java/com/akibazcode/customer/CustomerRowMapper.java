@@ -16,6 +16,7 @@ public class CustomerRowMapper implements RowMapper<Customer> {
                 rs.getString("email"),
                 rs.getInt("age")
         );
+        customer.setVersion(rs.getLong("version"));
         return customer;
     }
 }
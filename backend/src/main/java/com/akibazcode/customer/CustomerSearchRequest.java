@@ -0,0 +1,24 @@
+package com.akibazcode.customer;
+
+import java.util.Locale;
+
+// Filters of the customer search, null filters match every customer. The name prefix is case-insensitive,
+// the email has to match exactly and the age range includes both ends.
+public record CustomerSearchRequest(String namePrefix, String email, Integer minAge, Integer maxAge) {
+
+    // LIKE pattern for lower(name), the wildcards of the prefix itself are escaped with a backslash
+    String namePattern() {
+        return namePrefix.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+    }
+
+    boolean matches(Customer customer) {
+        return (namePrefix == null
+                || customer.getName().toLowerCase(Locale.ROOT).startsWith(namePrefix.toLowerCase(Locale.ROOT)))
+                && (email == null || email.equals(customer.getEmail()))
+                && (minAge == null || customer.getAge() >= minAge)
+                && (maxAge == null || customer.getAge() <= maxAge);
+    }
+}
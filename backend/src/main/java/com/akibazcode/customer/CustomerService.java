@@ -1,27 +1,120 @@
 package com.akibazcode.customer;
 
 import com.akibazcode.exception.RequestValidationException;
-import com.akibazcode.exception.DuplicateResourceException;
 import com.akibazcode.exception.ResourceNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+@Profile("!reactive")
 @Service // Creates service bean
 public class CustomerService {
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_BATCH_SIZE = 1000;
+    static final int MAX_SUGGEST_LIMIT = 100;
+
     private final CustomerDao customerDao;
+    private final CustomerSuggestIndex customerSuggestIndex;
+    private final CustomerStatistics customerStatistics;
+    // successful writes through this service, the customer list snapshot is keyed by it
+    private final AtomicLong writes = new AtomicLong();
 
     @Autowired
-    public CustomerService(@Qualifier("jdbc") CustomerDao customerDao) {
+    public CustomerService(
+            @Qualifier("cached") CustomerDao customerDao,
+            CustomerSuggestIndex customerSuggestIndex,
+            CustomerStatistics customerStatistics) {
         this.customerDao = customerDao;
+        this.customerSuggestIndex = customerSuggestIndex;
+        this.customerStatistics = customerStatistics;
     }
 
     public List<Customer> getAllCustomers() {
         return customerDao.selectAllCustomers();
     }
 
+    public CustomerPage getCustomersPage(String cursor, int limit) {
+        // check whether requested page size is within bounds
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new RequestValidationException(
+                    "Page limit must be between 1 and %s.".formatted(MAX_PAGE_SIZE)
+            );
+        }
+
+        // fetch one extra row to find out whether there is a next page
+        int afterId = cursor == null ? 0 : decodeCursor(cursor);
+        List<Customer> customers = customerDao.selectCustomersAfterId(afterId, limit + 1);
+        if (customers.size() <= limit) {
+            return new CustomerPage(customers, null);
+        }
+
+        List<Customer> page = customers.subList(0, limit);
+        return new CustomerPage(page, encodeCursor(page.get(limit - 1).getId()));
+    }
+
+    public List<Customer> searchCustomers(CustomerSearchRequest search, int limit) {
+        checkSearch(search, limit);
+        return customerDao.searchCustomers(search, limit);
+    }
+
+    static void checkSearch(CustomerSearchRequest search, int limit) {
+        // check whether requested page size is within bounds
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new RequestValidationException(
+                    "Search limit must be between 1 and %s.".formatted(MAX_PAGE_SIZE)
+            );
+        }
+
+        // check whether age range is not empty
+        if (search.minAge() != null && search.maxAge() != null && search.minAge() > search.maxAge()) {
+            throw new RequestValidationException(
+                    "Minimum age must not be greater than maximum age."
+            );
+        }
+
+        // a blank filter would match every customer and defeat the index
+        if (search.namePrefix() != null && search.namePrefix().isBlank()) {
+            throw new RequestValidationException(
+                    "Name prefix must not be blank."
+            );
+        }
+    }
+
+    public List<CustomerSuggestion> suggestCustomers(String query, int limit) {
+        // check whether requested number of suggestions is within bounds
+        if (limit < 1 || limit > MAX_SUGGEST_LIMIT) {
+            throw new RequestValidationException(
+                    "Suggest limit must be between 1 and %s.".formatted(MAX_SUGGEST_LIMIT)
+            );
+        }
+
+        return customerSuggestIndex.suggest(query, limit);
+    }
+
+    public CustomerStats getCustomerStats() {
+        return customerStatistics.snapshot();
+    }
+
+    public void exportCustomers(Consumer<Customer> action) {
+        customerDao.forEachCustomer(action);
+    }
+
     public Customer getCustomerById(Integer customerId) {
         Customer customer = customerDao.selectCustomerById(customerId)
                 .orElseThrow(
@@ -32,15 +125,28 @@ public class CustomerService {
         return customer;
     }
 
-    public void addCustomer(CustomerRegistrationRequest customerRegistrationRequest) {
-        // check if email is already taken
-        if (customerDao.existsCustomerWithEmail(customerRegistrationRequest.email())) {
-            throw new DuplicateResourceException(
-                    "Email already taken."
-            );
-        }
+    // customers in the order their ids were asked for, repeated ids once, ids without a customer as missing
+    public CustomerMultiGetResponse getCustomersByIds(List<Integer> customerIds) {
+        Set<Integer> ids = multiGetIds(customerIds);
+        return multiGetResponse(ids, customerDao.selectCustomersByIds(ids));
+    }
+
+    // empty when the customer does not exist or the dao does not track versions
+    public Optional<Long> getCustomerVersion(Integer customerId) {
+        return customerDao.selectCustomerVersion(customerId);
+    }
 
-        // add customer
+    // changes whenever any customer is written, empty when the dao does not track versions
+    public OptionalLong getCustomersVersion() {
+        return customerDao.selectCustomersVersion();
+    }
+
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    public Integer addCustomer(CustomerRegistrationRequest customerRegistrationRequest) {
+        // add customer, the dao rejects an email which is already taken
         Customer customer = new Customer(
                 customerRegistrationRequest.name(),
                 customerRegistrationRequest.email(),
@@ -48,53 +154,183 @@ public class CustomerService {
         );
 
         customerDao.insertCustomer(customer);
+        writes.incrementAndGet();
+        customerSuggestIndex.put(customer);
+        customerStatistics.add(customer.getAge());
+        return customer.getId();
+    }
+
+    public List<CustomerBatchRegistrationResult> addCustomers(
+            List<CustomerRegistrationRequest> customerRegistrationRequests) {
+        List<CustomerBatchRegistrationResult.Status> statuses = new ArrayList<>();
+        List<Customer> customers = batchCustomers(customerRegistrationRequests, statuses);
+
+        // add customers, the ones whose email is already taken are left without id
+        customerDao.insertCustomers(customers.stream().filter(Objects::nonNull).toList());
+        writes.incrementAndGet();
+        customers.stream()
+                .filter(customer -> customer != null && customer.getId() != null)
+                .forEach(customer -> {
+                    customerSuggestIndex.put(customer);
+                    customerStatistics.add(customer.getAge());
+                });
+
+        return batchResults(customerRegistrationRequests, customers, statuses);
     }
 
     public void deleteCustomerById(Integer customerId) {
-        // check whether customer with provided id exist
-        if (!customerDao.existsCustomerWithId(customerId)) {
-            throw new ResourceNotFoundException(
+        deleteCustomerById(customerId, null);
+    }
+
+    // expectedVersion null deletes unconditionally
+    public void deleteCustomerById(Integer customerId, Long expectedVersion) {
+        // check whether customer with provided id exist, its age is needed for the statistics
+        Customer customer = getCustomerById(customerId);
+
+        // delete customer, the dao rejects a version which is no longer current. A concurrent delete may have won,
+        // only the one which removed the row counts it
+        if (expectedVersion == null) {
+            if (!customerDao.deleteCustomerById(customerId)) {
+                throw new ResourceNotFoundException(
+                        "Customer with id: [%s] not found.".formatted(customerId)
+                );
+            }
+        } else {
+            customerDao.deleteCustomerById(customerId, expectedVersion);
+        }
+        writes.incrementAndGet();
+        customerSuggestIndex.remove(customerId);
+        customerStatistics.remove(customer.getAge());
+    }
+
+    public void updateCustomer(Integer customerId, CustomerUpdateRequest customerUpdateRequest) {
+        updateCustomer(customerId, customerUpdateRequest, null);
+    }
+
+    // expectedVersion null updates unconditionally
+    public void updateCustomer(Integer customerId, CustomerUpdateRequest customerUpdateRequest, Long expectedVersion) {
+        // update only what changed in one step, the dao rejects an email which is already taken
+        // and a version which is no longer current
+        CustomerPatchResult result = customerDao.patchCustomer(customerId, customerUpdateRequest, expectedVersion);
+        switch (result.status()) {
+            case NOT_FOUND -> throw new ResourceNotFoundException(
                     "Customer with id: [%s] not found.".formatted(customerId)
             );
+            case NO_CHANGES -> throw new RequestValidationException(
+                    "No data changes found."
+            );
+            case UPDATED -> {
+                writes.incrementAndGet();
+                if (customerUpdateRequest.name() != null || customerUpdateRequest.email() != null) {
+                    customerSuggestIndex.update(
+                            customerId, customerUpdateRequest.name(), customerUpdateRequest.email());
+                }
+                // the dao reports the age the customer had right before this update
+                if (customerUpdateRequest.age() != null) {
+                    customerStatistics.move(result.previousAge(), customerUpdateRequest.age());
+                }
+            }
+        }
+    }
+
+    // the distinct ids of a multi-get in the order they were asked for
+    static Set<Integer> multiGetIds(List<Integer> customerIds) {
+        // check whether number of ids is within bounds
+        if (customerIds.isEmpty() || customerIds.size() > MAX_BATCH_SIZE) {
+            throw new RequestValidationException(
+                    "Number of ids must be between 1 and %s.".formatted(MAX_BATCH_SIZE)
+            );
+        }
+        if (customerIds.stream().anyMatch(Objects::isNull)) {
+            throw new RequestValidationException(
+                    "Customer ids must not be null."
+            );
         }
+        return new LinkedHashSet<>(customerIds);
+    }
+
+    static CustomerMultiGetResponse multiGetResponse(Set<Integer> ids, List<Customer> found) {
+        Map<Integer, Customer> customersById = new HashMap<>();
+        found.forEach(customer -> customersById.put(customer.getId(), customer));
 
-        // delete customer
-        customerDao.deleteCustomerById(customerId);
+        List<Customer> customers = new ArrayList<>();
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer id : ids) {
+            Customer customer = customersById.get(id);
+            if (customer == null) {
+                missingIds.add(id);
+            } else {
+                customers.add(customer);
+            }
+        }
+        return new CustomerMultiGetResponse(customers, missingIds);
     }
 
-    public void updateCustomer(Integer customerId, CustomerUpdateRequest customerUpdateRequest) {
-        // check if customer with provided id exists
-        Customer customerToBeUpdated = getCustomerById(customerId);
-
-        // check whether there are any changes
-        boolean hasChanges = false;
-        if (customerUpdateRequest.name() != null && !customerUpdateRequest.name().equals(customerToBeUpdated.getName())) {
-            customerToBeUpdated.setName(customerUpdateRequest.name());
-            hasChanges = true;
+    // customers to add for a batch, null where a request is skipped with the status recorded in statuses
+    static List<Customer> batchCustomers(
+            List<CustomerRegistrationRequest> customerRegistrationRequests,
+            List<CustomerBatchRegistrationResult.Status> statuses) {
+        // check whether batch size is within bounds
+        if (customerRegistrationRequests.size() > MAX_BATCH_SIZE) {
+            throw new RequestValidationException(
+                    "Batch size must not exceed %s.".formatted(MAX_BATCH_SIZE)
+            );
         }
-        if (customerUpdateRequest.email() != null && !customerUpdateRequest.email().equals(customerToBeUpdated.getEmail())) {
-            // check whether provided email is already taken
-            if (customerDao.existsCustomerWithEmail(customerUpdateRequest.email())) {
-                throw new DuplicateResourceException(
-                        "Email already taken."
-                );
+
+        // skip incomplete requests and emails repeated within the batch
+        List<Customer> customers = new ArrayList<>();
+        Set<String> batchEmails = new HashSet<>();
+        for (CustomerRegistrationRequest request : customerRegistrationRequests) {
+            if (request == null || request.name() == null || request.email() == null || request.age() == null) {
+                customers.add(null);
+                statuses.add(CustomerBatchRegistrationResult.Status.INVALID);
+            } else if (!batchEmails.add(request.email())) {
+                customers.add(null);
+                statuses.add(CustomerBatchRegistrationResult.Status.DUPLICATE_EMAIL);
+            } else {
+                customers.add(new Customer(request.name(), request.email(), request.age()));
+                statuses.add(null);
             }
-            customerToBeUpdated.setEmail(customerUpdateRequest.email());
-            hasChanges = true;
         }
-        if (customerUpdateRequest.age() != null && !customerUpdateRequest.age().equals(customerToBeUpdated.getAge())) {
-            customerToBeUpdated.setAge(customerUpdateRequest.age());
-            hasChanges = true;
+        return customers;
+    }
+
+    static List<CustomerBatchRegistrationResult> batchResults(
+            List<CustomerRegistrationRequest> customerRegistrationRequests,
+            List<Customer> customers,
+            List<CustomerBatchRegistrationResult.Status> statuses) {
+        List<CustomerBatchRegistrationResult> results = new ArrayList<>();
+        for (int i = 0; i < customerRegistrationRequests.size(); i++) {
+            CustomerRegistrationRequest request = customerRegistrationRequests.get(i);
+            Customer customer = customers.get(i);
+            String email = request == null ? null : request.email();
+            if (customer == null) {
+                results.add(new CustomerBatchRegistrationResult(email, null, statuses.get(i)));
+            } else if (customer.getId() == null) {
+                results.add(new CustomerBatchRegistrationResult(
+                        email, null, CustomerBatchRegistrationResult.Status.DUPLICATE_EMAIL));
+            } else {
+                results.add(new CustomerBatchRegistrationResult(
+                        email, customer.getId(), CustomerBatchRegistrationResult.Status.CREATED));
+            }
         }
+        return results;
+    }
 
-        // update customer if there are changes
-        if (hasChanges) {
-            customerDao.updateCustomer(customerToBeUpdated);
-        } else {
+    static String encodeCursor(Integer customerId) {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(customerId.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            return Integer.parseInt(decoded);
+        } catch (IllegalArgumentException e) {
             throw new RequestValidationException(
-                    "No data changes found."
+                    "Invalid page cursor."
             );
         }
-
     }
 }
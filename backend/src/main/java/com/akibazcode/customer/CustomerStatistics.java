@@ -0,0 +1,160 @@
+package com.akibazcode.customer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Customer count and age distribution kept in one striped counter per year of age, so concurrent writes do not
+// contend and a snapshot costs a pass over the counters instead of a table scan. CustomerService counts its
+// writes, writes it never sees and races with them are corrected by the periodic GROUP BY reconciliation.
+// Ages below 0 and above MAX_AGE get counters of their own on first use, so count, min, max and mean stay exact
+// and only the histogram puts them into the bucket of the nearest bound.
+@Profile("!reactive")
+@Component
+public class CustomerStatistics implements MeterBinder {
+    static final int MAX_AGE = 150;
+    static final int BUCKET_WIDTH = 10;
+    private static final Logger log = LoggerFactory.getLogger(CustomerStatistics.class);
+
+    private final CustomerDao customerDao;
+    private final LongAdder[] customersByAge = new LongAdder[MAX_AGE + 1];
+    private final ConcurrentMap<Integer, LongAdder> customersOutOfAgeRange = new ConcurrentHashMap<>();
+    private volatile Counter corrections;
+
+    public CustomerStatistics(@Qualifier("cached") CustomerDao customerDao) {
+        this.customerDao = customerDao;
+        for (int age = 0; age <= MAX_AGE; age++) {
+            customersByAge[age] = new LongAdder();
+        }
+    }
+
+    public void add(int age) {
+        customers(age).increment();
+    }
+
+    public void remove(int age) {
+        customers(age).decrement();
+    }
+
+    public void move(int fromAge, int toAge) {
+        if (fromAge != toAge) {
+            customers(fromAge).decrement();
+            customers(toAge).increment();
+        }
+    }
+
+    // a counter read in the middle of a move can be briefly negative, stats skips it
+    public CustomerStats snapshot() {
+        return stats(counts());
+    }
+
+    // stats of exact counts per age, e.g. from a GROUP BY. Ages outside 0..MAX_AGE count towards min, max and mean
+    // as they are, and towards the histogram bucket of the nearest bound.
+    static CustomerStats stats(Map<Integer, Long> customersByAge) {
+        long count = 0;
+        long ageSum = 0;
+        Integer minAge = null;
+        Integer maxAge = null;
+        long[] buckets = new long[MAX_AGE / BUCKET_WIDTH + 1];
+        for (Map.Entry<Integer, Long> entry : customersByAge.entrySet()) {
+            int age = entry.getKey();
+            long customers = entry.getValue();
+            if (customers <= 0) {
+                continue;
+            }
+            count += customers;
+            ageSum += customers * age;
+            minAge = minAge == null ? age : Math.min(minAge, age);
+            maxAge = maxAge == null ? age : Math.max(maxAge, age);
+            buckets[index(age) / BUCKET_WIDTH] += customers;
+        }
+        return new CustomerStats(count, minAge, maxAge, count == 0 ? null : (double) ageSum / count, histogram(buckets));
+    }
+
+    private static List<CustomerAgeBucket> histogram(long[] buckets) {
+        List<CustomerAgeBucket> histogram = new ArrayList<>();
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            int minAge = bucket * BUCKET_WIDTH;
+            histogram.add(new CustomerAgeBucket(minAge, Math.min(minAge + BUCKET_WIDTH - 1, MAX_AGE), buckets[bucket]));
+        }
+        return histogram;
+    }
+
+    // counters whose value changed while the query ran are left for the next run,
+    // the database cannot tell whether it saw those writes
+    @Scheduled(
+            initialDelayString = "${customer.stats.initial-delay:PT0S}",
+            fixedDelayString = "${customer.stats.reconcile-interval:PT5M}"
+    )
+    public void reconcile() {
+        Map<Integer, Long> before = counts();
+        Map<Integer, Long> customersByAgeInDatabase = customerDao.countCustomersByAge();
+        Map<Integer, Long> after = counts();
+
+        Set<Integer> ages = new HashSet<>(after.keySet());
+        ages.addAll(customersByAgeInDatabase.keySet());
+        long corrected = 0;
+        for (int age : ages) {
+            long expected = customersByAgeInDatabase.getOrDefault(age, 0L);
+            long actual = after.getOrDefault(age, 0L);
+            if (before.getOrDefault(age, 0L) == actual && expected != actual) {
+                customers(age).add(expected - actual);
+                corrected += Math.abs(expected - actual);
+            }
+        }
+        if (corrected > 0) {
+            log.info("Corrected customer statistics by {} customers", corrected);
+            if (corrections != null) {
+                corrections.increment(corrected);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        corrections = Counter.builder("customer.stats.corrections")
+                .description("Customers the statistics were off by when reconciled with the database")
+                .register(registry);
+        Gauge.builder("customer.stats.count", this, s -> s.snapshot().count())
+                .description("Customers counted by the statistics")
+                .register(registry);
+    }
+
+    // customers of every age which has a counter, zeros included
+    private Map<Integer, Long> counts() {
+        Map<Integer, Long> counts = new HashMap<>();
+        for (int age = 0; age <= MAX_AGE; age++) {
+            counts.put(age, customersByAge[age].sum());
+        }
+        customersOutOfAgeRange.forEach((age, customers) -> counts.put(age, customers.sum()));
+        return counts;
+    }
+
+    private LongAdder customers(int age) {
+        if (age >= 0 && age <= MAX_AGE) {
+            return customersByAge[age];
+        }
+        return customersOutOfAgeRange.computeIfAbsent(age, a -> new LongAdder());
+    }
+
+    private static int index(int age) {
+        return Math.max(0, Math.min(MAX_AGE, age));
+    }
+}
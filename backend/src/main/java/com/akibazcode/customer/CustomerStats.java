@@ -0,0 +1,13 @@
+package com.akibazcode.customer;
+
+import java.util.List;
+
+// min, max and mean age are null while there are no customers
+public record CustomerStats(
+        long count,
+        Integer minAge,
+        Integer maxAge,
+        Double meanAge,
+        List<CustomerAgeBucket> ageHistogram
+) {
+}
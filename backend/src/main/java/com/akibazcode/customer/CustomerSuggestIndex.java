@@ -0,0 +1,448 @@
+package com.akibazcode.customer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Type-ahead over customer names and emails without a database round trip. Both are split into words and every
+// word into trigrams padded with two blanks in front like pg_trgm does, so a query word of any length can be looked
+// up as a word prefix. Posting lists are sorted int arrays of customer ids. Trigrams are kept in three nested key
+// spaces, the first word of the name, every word of the name and every word of name and email, one per rank of
+// match: each is searched in turn by intersecting the lists of the query trigrams in id order, so a query stops as
+// soon as it has enough matches instead of ranking every candidate. Words which a customer no longer has stay in
+// the posting lists until the next periodic rebuild, candidates are checked against the stored name and email.
+// Names and emails are kept in dense slots found through an id -> slot map, so memory follows the number of
+// customers rather than the highest id.
+@Profile("!reactive")
+@Component
+public class CustomerSuggestIndex implements MeterBinder {
+    private final CustomerDao customerDao;
+    private volatile Index index = new Index(false);
+    private volatile Index nextIndex;
+
+    public CustomerSuggestIndex(@Qualifier("cached") CustomerDao customerDao) {
+        this.customerDao = customerDao;
+    }
+
+    // up to limit customers with a word starting with each word of the query, those whose name starts with the
+    // whole query first, then those matching on their name alone, then the ones which need their email,
+    // each group in id order
+    public List<CustomerSuggestion> suggest(String query, int limit) {
+        return index.suggest(query, limit);
+    }
+
+    public void put(Customer customer) {
+        if (customer.getId() == null) {
+            return;
+        }
+        // customers written while a rebuild scans must not be lost when the indexes are swapped
+        Index next = nextIndex;
+        if (next != null) {
+            next.put(customer.getId(), customer.getName(), customer.getEmail(), true);
+        }
+        index.put(customer.getId(), customer.getName(), customer.getEmail(), true);
+    }
+
+    // null name or email keeps the indexed one
+    public void update(Integer customerId, String name, String email) {
+        Index next = nextIndex;
+        if (next != null) {
+            next.update(customerId, name, email);
+        }
+        index.update(customerId, name, email);
+    }
+
+    public void remove(Integer customerId) {
+        Index next = nextIndex;
+        if (next != null) {
+            next.remove(customerId);
+        }
+        index.remove(customerId);
+    }
+
+    @Scheduled(
+            initialDelayString = "${customer.suggest.initial-delay:PT0S}",
+            fixedDelayString = "${customer.suggest.rebuild-interval:PT1H}"
+    )
+    public void rebuild() {
+        Index next = new Index(true);
+        nextIndex = next;
+        try {
+            customerDao.forEachCustomer(customer ->
+                    next.put(customer.getId(), customer.getName(), customer.getEmail(), false));
+            next.finishBuild();
+            index = next;
+        } finally {
+            nextIndex = null;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("customer.suggest.customers", this, s -> s.index.customers)
+                .description("Customers in the suggest index")
+                .register(registry);
+        Gauge.builder("customer.suggest.postings", this, s -> s.index.postingCount)
+                .description("Customer ids in the posting lists of the suggest index")
+                .register(registry);
+    }
+
+    // lower-cased runs of letters and digits
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // trigrams of the word with two blanks in front, packed into the low 48 bits 16 bits per char,
+    // the key space goes into the high bits
+    static long[] trigrams(String word, int keySpace) {
+        long[] trigrams = new long[word.length()];
+        char first = ' ';
+        char second = ' ';
+        for (int i = 0; i < word.length(); i++) {
+            char third = word.charAt(i);
+            trigrams[i] = (long) keySpace << 48 | (long) first << 32 | (long) second << 16 | third;
+            first = second;
+            second = third;
+        }
+        return trigrams;
+    }
+
+    private static final class Index {
+        // key spaces, each contains the words of the one before
+        private static final int FIRST_NAME_WORD = 0;
+        private static final int NAME = 1;
+        private static final int NAME_AND_EMAIL = 2;
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Postings> postings = new HashMap<>();
+        private final OffHeapIntIndex slots = new OffHeapIntIndex(1024);
+        // indexed by slot, slots of removed customers are reused
+        private String[] names = new String[1024];
+        private String[] emails = new String[1024];
+        private int slotCount;
+        private int[] freeSlots = new int[16];
+        private int freeSlotCount;
+        // ids written while a rebuild scans, what the scan read for them may already be outdated
+        private final Set<Integer> written = new HashSet<>();
+        // updates of customers the scan has not reached yet while a rebuild scans, its snapshot may predate them
+        private final Map<Integer, PendingUpdate> pendingUpdates = new HashMap<>();
+        private boolean building;
+        private volatile int customers;
+        private volatile long postingCount;
+
+        private Index(boolean building) {
+            this.building = building;
+        }
+
+        void put(int customerId, String name, String email, boolean write) {
+            lock.writeLock().lock();
+            try {
+                if (building) {
+                    if (!write && written.contains(customerId)) {
+                        return;
+                    }
+                    if (write) {
+                        written.add(customerId);
+                    }
+                    PendingUpdate pending = pendingUpdates.remove(customerId);
+                    if (pending != null && !write) {
+                        name = pending.name() == null ? name : pending.name();
+                        email = pending.email() == null ? email : pending.email();
+                    }
+                }
+                int slot = slots.get(customerId);
+                if (slot == OffHeapIntIndex.NOT_FOUND) {
+                    slot = newSlot();
+                    slots.put(customerId, slot);
+                    customers++;
+                }
+                names[slot] = name;
+                emails[slot] = email;
+                addNamePostings(customerId, name);
+                addEmailPostings(customerId, email);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void update(int customerId, String name, String email) {
+            lock.writeLock().lock();
+            try {
+                int slot = slots.get(customerId);
+                if (slot == OffHeapIntIndex.NOT_FOUND) {
+                    if (building) {
+                        // not scanned yet, applied over what the scan reads for it
+                        pendingUpdates.merge(customerId, new PendingUpdate(name, email), PendingUpdate::then);
+                    }
+                    return;
+                }
+                if (building) {
+                    written.add(customerId);
+                }
+                if (name != null) {
+                    names[slot] = name;
+                    addNamePostings(customerId, name);
+                }
+                if (email != null) {
+                    emails[slot] = email;
+                    addEmailPostings(customerId, email);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(int customerId) {
+            lock.writeLock().lock();
+            try {
+                if (building) {
+                    written.add(customerId);
+                    pendingUpdates.remove(customerId);
+                }
+                int slot = slots.get(customerId);
+                if (slot != OffHeapIntIndex.NOT_FOUND) {
+                    slots.remove(customerId, slot);
+                    names[slot] = null;
+                    emails[slot] = null;
+                    if (freeSlotCount == freeSlots.length) {
+                        freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+                    }
+                    freeSlots[freeSlotCount++] = slot;
+                    customers--;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private int newSlot() {
+            if (freeSlotCount > 0) {
+                return freeSlots[--freeSlotCount];
+            }
+            if (slotCount == names.length) {
+                names = Arrays.copyOf(names, slotCount * 2);
+                emails = Arrays.copyOf(emails, slotCount * 2);
+            }
+            return slotCount++;
+        }
+
+        // the scan appends in whatever order the dao returns, sort once at the end
+        void finishBuild() {
+            lock.writeLock().lock();
+            try {
+                long count = 0;
+                for (Postings list : postings.values()) {
+                    list.sort();
+                    count += list.size;
+                }
+                postingCount = count;
+                building = false;
+                written.clear();
+                // customers the scan never returned, deleted before it got to them
+                pendingUpdates.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void addNamePostings(int customerId, String name) {
+            List<String> words = words(name);
+            for (int i = 0; i < words.size(); i++) {
+                if (i == 0) {
+                    addPostings(customerId, words.get(i), FIRST_NAME_WORD);
+                }
+                addPostings(customerId, words.get(i), NAME);
+                addPostings(customerId, words.get(i), NAME_AND_EMAIL);
+            }
+        }
+
+        private void addEmailPostings(int customerId, String email) {
+            for (String word : words(email)) {
+                addPostings(customerId, word, NAME_AND_EMAIL);
+            }
+        }
+
+        private void addPostings(int customerId, String word, int keySpace) {
+            for (long trigram : trigrams(word, keySpace)) {
+                Postings list = postings.computeIfAbsent(trigram, t -> new Postings());
+                if (building ? list.append(customerId) : list.insert(customerId)) {
+                    postingCount++;
+                }
+            }
+        }
+
+        List<CustomerSuggestion> suggest(String query, int limit) {
+            List<String> queryWords = words(query);
+            if (queryWords.isEmpty()) {
+                return List.of();
+            }
+
+            lock.readLock().lock();
+            try {
+                List<CustomerSuggestion> suggestions = new ArrayList<>();
+                for (int rank = FIRST_NAME_WORD; rank <= NAME_AND_EMAIL && suggestions.size() < limit; rank++) {
+                    collect(queryWords, rank, limit, suggestions);
+                }
+                return suggestions;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // adds the customers of the rank in id order, customers of a better rank are in its posting lists
+        // as well and were collected before
+        private void collect(List<String> queryWords, int rank, int limit, List<CustomerSuggestion> suggestions) {
+            List<Postings> lists = new ArrayList<>();
+            for (int i = 0; i < queryWords.size(); i++) {
+                int keySpace = rank == FIRST_NAME_WORD && i > 0 ? NAME : rank;
+                for (long trigram : trigrams(queryWords.get(i), keySpace)) {
+                    Postings list = postings.get(trigram);
+                    if (list == null) {
+                        return;
+                    }
+                    lists.add(list);
+                }
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+
+            Postings shortest = lists.get(0);
+            for (int i = 0; i < shortest.size && suggestions.size() < limit; i++) {
+                int customerId = shortest.ids[i];
+                int slot = slots.get(customerId);
+                if (slot != OffHeapIntIndex.NOT_FOUND
+                        && containedInAll(lists, customerId)
+                        && rank(slot, queryWords) == rank) {
+                    suggestions.add(new CustomerSuggestion(customerId, names[slot], emails[slot]));
+                }
+            }
+        }
+
+        private static boolean containedInAll(List<Postings> lists, int customerId) {
+            for (int i = 1; i < lists.size(); i++) {
+                if (!lists.get(i).contains(customerId)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FIRST_NAME_WORD when the name starts with the query, NAME when the name has all query words as word
+        // prefixes, NAME_AND_EMAIL when name and email together have them, -1 for candidates left behind by
+        // changed customers
+        private int rank(int slot, List<String> queryWords) {
+            List<String> nameWords = words(names[slot]);
+            if (String.join(" ", nameWords).startsWith(String.join(" ", queryWords))) {
+                return FIRST_NAME_WORD;
+            }
+            if (allPrefixed(queryWords, nameWords)) {
+                return NAME;
+            }
+            List<String> allWords = new ArrayList<>(nameWords);
+            allWords.addAll(words(emails[slot]));
+            return allPrefixed(queryWords, allWords) ? NAME_AND_EMAIL : -1;
+        }
+
+        private static boolean allPrefixed(List<String> queryWords, List<String> words) {
+            for (String queryWord : queryWords) {
+                boolean found = false;
+                for (String word : words) {
+                    if (word.startsWith(queryWord)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // null name or email keeps the one before
+    private record PendingUpdate(String name, String email) {
+        PendingUpdate then(PendingUpdate later) {
+            return new PendingUpdate(
+                    later.name() == null ? name : later.name(),
+                    later.email() == null ? email : later.email()
+            );
+        }
+    }
+
+    // growable sorted array of customer ids
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        boolean append(int customerId) {
+            if (size > 0 && ids[size - 1] == customerId) {
+                return false;
+            }
+            grow();
+            ids[size++] = customerId;
+            return true;
+        }
+
+        boolean insert(int customerId) {
+            int position = Arrays.binarySearch(ids, 0, size, customerId);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            grow();
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = customerId;
+            size++;
+            return true;
+        }
+
+        boolean contains(int customerId) {
+            return Arrays.binarySearch(ids, 0, size, customerId) >= 0;
+        }
+
+        void sort() {
+            Arrays.sort(ids, 0, size);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+                    ids[distinct++] = ids[i];
+                }
+            }
+            size = distinct;
+            ids = Arrays.copyOf(ids, Math.max(4, size));
+        }
+
+        private void grow() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,8 @@
+package com.akibazcode.customer;
+
+public record CustomerSuggestion(
+        Integer id,
+        String name,
+        String email
+) {
+}
@@ -1,4 +1,22 @@
 package com.akibazcode.customer;
 
 public record CustomerUpdateRequest(String name, String email, Integer age) {
+
+    // copies the fields which are set and differ onto the customer, returns whether any did
+    boolean applyTo(Customer customer) {
+        boolean hasChanges = false;
+        if (name != null && !name.equals(customer.getName())) {
+            customer.setName(name);
+            hasChanges = true;
+        }
+        if (email != null && !email.equals(customer.getEmail())) {
+            customer.setEmail(email);
+            hasChanges = true;
+        }
+        if (age != null && !age.equals(customer.getAge())) {
+            customer.setAge(age);
+            hasChanges = true;
+        }
+        return hasChanges;
+    }
 }
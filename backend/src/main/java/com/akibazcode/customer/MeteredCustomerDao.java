@@ -0,0 +1,150 @@
+package com.akibazcode.customer;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Times every call of another dao as customer.dao.calls, tagged with the dao name, the method and the exception
+// thrown if any. The timers publish histogram buckets, so p99 per query can be computed and alerted on in Prometheus.
+public class MeteredCustomerDao implements CustomerDao {
+    private static final String METRIC_NAME = "customer.dao.calls";
+
+    private final CustomerDao customerDao;
+    private final String daoName;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary selectAllRows;
+
+    public MeteredCustomerDao(CustomerDao customerDao, String daoName, MeterRegistry meterRegistry) {
+        this.customerDao = customerDao;
+        this.daoName = daoName;
+        this.meterRegistry = meterRegistry;
+        this.selectAllRows = DistributionSummary.builder("customer.dao.rows")
+                .description("Rows returned by a customer dao query")
+                .tag("dao", daoName)
+                .tag("method", "selectAllCustomers")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        List<Customer> customers = record("selectAllCustomers", customerDao::selectAllCustomers);
+        selectAllRows.record(customers.size());
+        return customers;
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer customerId, int limit) {
+        return record("selectCustomersAfterId", () -> customerDao.selectCustomersAfterId(customerId, limit));
+    }
+
+    // includes the time spent in the action, the export writes every row to the response as it is read
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        record("forEachCustomer", () -> customerDao.forEachCustomer(action));
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearchRequest search, int limit) {
+        return record("searchCustomers", () -> customerDao.searchCustomers(search, limit));
+    }
+
+    @Override
+    public Map<Integer, Long> countCustomersByAge() {
+        return record("countCustomersByAge", customerDao::countCustomersByAge);
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer customerId) {
+        return record("selectCustomerById", () -> customerDao.selectCustomerById(customerId));
+    }
+
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+        return record("selectCustomersByIds", () -> customerDao.selectCustomersByIds(customerIds));
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        record("insertCustomer", () -> customerDao.insertCustomer(customer));
+    }
+
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        record("insertCustomers", () -> customerDao.insertCustomers(customers));
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        return record("existsCustomerWithEmail", () -> customerDao.existsCustomerWithEmail(email));
+    }
+
+    @Override
+    public boolean existsCustomerWithId(Integer customerId) {
+        return record("existsCustomerWithId", () -> customerDao.existsCustomerWithId(customerId));
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer customerId) {
+        return record("deleteCustomerById", () -> customerDao.deleteCustomerById(customerId));
+    }
+
+    @Override
+    public void updateCustomer(Customer update) {
+        record("updateCustomer", () -> customerDao.updateCustomer(update));
+    }
+
+    @Override
+    public CustomerPatchResult patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion) {
+        return record("patchCustomer", () -> customerDao.patchCustomer(customerId, update, expectedVersion));
+    }
+
+    @Override
+    public void deleteCustomerById(Integer customerId, long expectedVersion) {
+        record("deleteCustomerByIdAndVersion", () -> customerDao.deleteCustomerById(customerId, expectedVersion));
+    }
+
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer customerId) {
+        return record("selectCustomerVersion", () -> customerDao.selectCustomerVersion(customerId));
+    }
+
+    @Override
+    public OptionalLong selectCustomersVersion() {
+        return record("selectCustomersVersion", customerDao::selectCustomersVersion);
+    }
+
+    private void record(String method, Runnable call) {
+        record(method, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private <T> T record(String method, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(METRIC_NAME)
+                    .description("Time spent in customer dao calls")
+                    .tag("dao", daoName)
+                    .tag("method", method)
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.akibazcode.customer;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntPredicate;
+
+// Open-addressing int -> int multimap kept in a direct buffer, each slot is [int key][int value].
+// Not thread-safe, callers guard it with their own lock.
+class OffHeapIntIndex {
+    private static final int SLOT_SIZE = 8;
+    private static final int EMPTY = -1;
+    private static final int REMOVED = -2;
+    static final int NOT_FOUND = -1;
+
+    private ByteBuffer slots;
+    private int mask;
+    private int size;
+    private int used;
+
+    OffHeapIntIndex(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    int size() {
+        return size;
+    }
+
+    void put(int key, int value) {
+        if ((used + 1) * 2L > mask + 1L) {
+            rehash(capacityFor(size + 1));
+        }
+        int slot = slotFor(key);
+        while (true) {
+            int current = valueAt(slot);
+            if (current == EMPTY) {
+                used++;
+                break;
+            }
+            if (current == REMOVED) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots.putInt(slot * SLOT_SIZE, key);
+        slots.putInt(slot * SLOT_SIZE + 4, value);
+        size++;
+    }
+
+    int get(int key) {
+        return find(key, value -> true);
+    }
+
+    // first value stored under key which matches, or NOT_FOUND
+    int find(int key, IntPredicate matches) {
+        int slot = slotFor(key);
+        while (true) {
+            int value = valueAt(slot);
+            if (value == EMPTY) {
+                return NOT_FOUND;
+            }
+            if (value != REMOVED && keyAt(slot) == key && matches.test(value)) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    boolean remove(int key, int value) {
+        int slot = slotFor(key);
+        while (true) {
+            int current = valueAt(slot);
+            if (current == EMPTY) {
+                return false;
+            }
+            if (current == value && keyAt(slot) == key) {
+                slots.putInt(slot * SLOT_SIZE + 4, REMOVED);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        ByteBuffer old = slots;
+        int oldCapacity = mask + 1;
+        allocate(capacity);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int value = old.getInt(slot * SLOT_SIZE + 4);
+            if (value >= 0) {
+                put(old.getInt(slot * SLOT_SIZE), value);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        for (int slot = 0; slot < capacity; slot++) {
+            slots.putInt(slot * SLOT_SIZE + 4, EMPTY);
+        }
+        mask = capacity - 1;
+        size = 0;
+        used = 0;
+    }
+
+    private int keyAt(int slot) {
+        return slots.getInt(slot * SLOT_SIZE);
+    }
+
+    private int valueAt(int slot) {
+        return slots.getInt(slot * SLOT_SIZE + 4);
+    }
+
+    private int slotFor(int key) {
+        // murmur3 finalizer, ids are sequential and would otherwise cluster
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    // power of two keeping the load factor at or below one half
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,173 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.NotImplementedException;
+import com.akibazcode.exception.RequestValidationException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// Same contract as CustomerController, served by WebFlux when the reactive profile is active.
+// Flux results are written to the socket as the client reads them, so backpressure reaches the database.
+// Stats are counted by the database on each request. Suggest needs the in-memory index which only the servlet stack
+// keeps, so it answers 501 instead of falling through to a 404. The list is not gzipped from a cached snapshot.
+@Profile("reactive")
+@RestController
+@RequestMapping("api/v1/customers")
+public class ReactiveCustomerController {
+    private final ReactiveCustomerService customerService;
+
+    public ReactiveCustomerController(ReactiveCustomerService customerService) {
+        this.customerService = customerService;
+    }
+
+    // REST API for getting all customers, 304 when the table version still matches If-None-Match
+    @GetMapping
+    public Mono<ResponseEntity<Flux<Customer>>> getCustomers(ServerWebExchange exchange) {
+        return customerService.getCustomersVersion()
+                .map(version -> exchange.checkNotModified(CustomerController.eTag(version))
+                        ? notModified(version)
+                        : ResponseEntity.ok()
+                        .eTag(CustomerController.eTag(version))
+                        .body(customerService.getAllCustomers()));
+    }
+
+    // REST API for getting customers page by page, 304 when the table version still matches If-None-Match
+    @GetMapping(params = {"limit", "!ids"})
+    public Mono<ResponseEntity<CustomerPage>> getCustomersPage(
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "limit") int limit,
+            ServerWebExchange exchange
+    ) {
+        return customerService.getCustomersVersion()
+                .flatMap(version -> exchange.checkNotModified(CustomerController.eTag(version))
+                        ? Mono.just(ReactiveCustomerController.<CustomerPage>notModified(version))
+                        : customerService.getCustomersPage(after, limit)
+                        .map(page -> ResponseEntity.ok().eTag(CustomerController.eTag(version)).body(page)));
+    }
+
+    // REST API for getting many customers by id at once, ids=1,2,3
+    @GetMapping(params = {"ids", "!limit"})
+    public Mono<CustomerMultiGetResponse> getCustomersByIds(
+            @RequestParam(name = "ids") List<Integer> customerIds
+    ) {
+        return customerService.getCustomersByIds(customerIds);
+    }
+
+    // a page and a pick of ids at once would otherwise fall through to the full list
+    @GetMapping(params = {"limit", "ids"})
+    public Mono<Void> getCustomersPageAndIds() {
+        return Mono.error(new RequestValidationException(CustomerController.LIMIT_AND_IDS_MESSAGE));
+    }
+
+    // REST API for getting many customers by id at once, for id lists too long for a query string
+    @PostMapping("lookup")
+    public Mono<CustomerMultiGetResponse> lookupCustomers(
+            @RequestBody List<Integer> customerIds) {
+        return customerService.getCustomersByIds(customerIds);
+    }
+
+    // REST API for searching customers by name prefix, email and age range
+    @GetMapping("search")
+    public Flux<Customer> searchCustomers(
+            @RequestParam(name = "namePrefix", required = false) String namePrefix,
+            @RequestParam(name = "email", required = false) String email,
+            @RequestParam(name = "minAge", required = false) Integer minAge,
+            @RequestParam(name = "maxAge", required = false) Integer maxAge,
+            @RequestParam(name = "limit", defaultValue = "100") int limit
+    ) {
+        return customerService.searchCustomers(
+                new CustomerSearchRequest(namePrefix, email, minAge, maxAge),
+                limit
+        );
+    }
+
+    // not available on the reactive stack
+    @GetMapping("suggest")
+    public Mono<Void> suggestCustomers() {
+        return Mono.error(new NotImplementedException(
+                "Suggest is not available on the reactive stack."
+        ));
+    }
+
+    // REST API for customer count and age distribution
+    @GetMapping("stats")
+    public Mono<CustomerStats> getCustomerStats() {
+        return customerService.getCustomerStats();
+    }
+
+    // REST API for streaming all customers as NDJSON or as a JSON array
+    @GetMapping("export")
+    public ResponseEntity<Flux<Customer>> exportCustomers(
+            @RequestParam(name = "format", defaultValue = "ndjson") String format
+    ) {
+        MediaType mediaType = switch (format) {
+            case "ndjson" -> MediaType.APPLICATION_NDJSON;
+            case "json" -> MediaType.APPLICATION_JSON;
+            default -> throw new RequestValidationException(
+                    "Unsupported export format: [%s].".formatted(format)
+            );
+        };
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(customerService.getAllCustomers());
+    }
+
+    // REST API for getting customer by id, 304 when the version still matches If-None-Match
+    @GetMapping("{customerId}")
+    public Mono<ResponseEntity<Customer>> getCustomerById(
+            @PathVariable(name = "customerId") Integer customerId
+    ) {
+        // the result handler answers 304 itself once the ETag is set
+        return customerService.getCustomerById(customerId)
+                .map(customer -> ResponseEntity.ok()
+                        .eTag(CustomerController.eTag(customer.getVersion()))
+                        .body(customer));
+    }
+
+    // REST API for posting new customer
+    @PostMapping
+    public Mono<CustomerRegistrationResponse> registerCustomer(
+            @RequestBody CustomerRegistrationRequest customerRegistrationRequest) {
+        return customerService.addCustomer(customerRegistrationRequest)
+                .map(CustomerRegistrationResponse::new);
+    }
+
+    // REST API for posting many new customers at once
+    @PostMapping("batch")
+    public Mono<List<CustomerBatchRegistrationResult>> registerCustomers(
+            @RequestBody List<CustomerRegistrationRequest> customerRegistrationRequests) {
+        return customerService.addCustomers(customerRegistrationRequests);
+    }
+
+    // REST API for deleting customer by id, only while it still matches If-Match when given
+    @DeleteMapping("{customerId}")
+    public Mono<Void> deleteCustomerById(
+            @PathVariable("customerId") Integer customerId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return customerService.deleteCustomerById(customerId, CustomerController.expectedVersion(ifMatch));
+    }
+
+    // REST API for updating customer, only while it still matches If-Match when given
+    @PutMapping("{customerId}")
+    public Mono<Void> updateCustomer(
+            @PathVariable("customerId") Integer customerId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody CustomerUpdateRequest customerUpdateRequest) {
+        return customerService.updateCustomer(
+                customerId, customerUpdateRequest, CustomerController.expectedVersion(ifMatch));
+    }
+
+    private static <T> ResponseEntity<T> notModified(long version) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(CustomerController.eTag(version))
+                .build();
+    }
+}
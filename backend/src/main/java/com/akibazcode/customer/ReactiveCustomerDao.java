@@ -0,0 +1,46 @@
+package com.akibazcode.customer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface ReactiveCustomerDao {
+    Flux<Customer> selectAllCustomers();
+
+    // customers with an id greater than customerId, ordered by id
+    Flux<Customer> selectCustomersAfterId(Integer customerId, int limit);
+
+    Mono<Customer> selectCustomerById(Integer customerId);
+
+    // customers among the ids in no particular order, ids without a customer are left out
+    Flux<Customer> selectCustomersByIds(Collection<Integer> customerIds);
+
+    // customers matching every filter of the search ordered by id
+    Flux<Customer> searchCustomers(CustomerSearchRequest search, int limit);
+
+    // number of customers of each age
+    Mono<Map<Integer, Long>> countCustomersByAge();
+
+    // emits the customer with its generated id, or a DuplicateResourceException when the email is taken
+    Mono<Customer> insertCustomer(Customer customer);
+
+    Mono<Boolean> existsCustomerWithEmail(String email);
+
+    Mono<Boolean> existsCustomerWithId(Integer customerId);
+
+    // emits whether the customer existed
+    Mono<Boolean> deleteCustomerById(Integer customerId);
+
+    // emits whether the customer existed, or a PreconditionFailedException when it has another version
+    Mono<Boolean> deleteCustomerById(Integer customerId, long expectedVersion);
+
+    Mono<Void> updateCustomer(Customer update);
+
+    // same contract as CustomerDao.patchCustomer, emitting its errors
+    Mono<CustomerPatchResult> patchCustomer(Integer customerId, CustomerUpdateRequest update, Long expectedVersion);
+
+    // changes whenever any customer is written
+    Mono<Long> selectCustomersVersion();
+}
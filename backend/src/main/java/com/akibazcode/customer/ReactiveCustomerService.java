@@ -0,0 +1,148 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.RequestValidationException;
+import com.akibazcode.exception.ResourceNotFoundException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+// Same rules as CustomerService, for the reactive stack
+@Profile("reactive")
+@Service
+public class ReactiveCustomerService {
+    private final ReactiveCustomerDao customerDao;
+
+    public ReactiveCustomerService(ReactiveCustomerDao customerDao) {
+        this.customerDao = customerDao;
+    }
+
+    public Flux<Customer> getAllCustomers() {
+        return customerDao.selectAllCustomers();
+    }
+
+    public Mono<CustomerPage> getCustomersPage(String cursor, int limit) {
+        // check whether requested page size is within bounds
+        if (limit < 1 || limit > CustomerService.MAX_PAGE_SIZE) {
+            return Mono.error(new RequestValidationException(
+                    "Page limit must be between 1 and %s.".formatted(CustomerService.MAX_PAGE_SIZE)
+            ));
+        }
+
+        // fetch one extra row to find out whether there is a next page
+        return Mono.fromSupplier(() -> cursor == null ? 0 : CustomerService.decodeCursor(cursor))
+                .flatMap(afterId -> customerDao.selectCustomersAfterId(afterId, limit + 1).collectList())
+                .map(customers -> {
+                    if (customers.size() <= limit) {
+                        return new CustomerPage(customers, null);
+                    }
+                    List<Customer> page = customers.subList(0, limit);
+                    return new CustomerPage(page, CustomerService.encodeCursor(page.get(limit - 1).getId()));
+                });
+    }
+
+    public Flux<Customer> searchCustomers(CustomerSearchRequest search, int limit) {
+        try {
+            CustomerService.checkSearch(search, limit);
+        } catch (RequestValidationException e) {
+            return Flux.error(e);
+        }
+        return customerDao.searchCustomers(search, limit);
+    }
+
+    // counted by the database on every call, the reactive stack keeps no statistics in memory
+    public Mono<CustomerStats> getCustomerStats() {
+        return customerDao.countCustomersByAge()
+                .map(CustomerStatistics::stats);
+    }
+
+    // changes whenever any customer is written
+    public Mono<Long> getCustomersVersion() {
+        return customerDao.selectCustomersVersion();
+    }
+
+    public Mono<Customer> getCustomerById(Integer customerId) {
+        return customerDao.selectCustomerById(customerId)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException(
+                        "Customer with id: [%s] not found.".formatted(customerId)
+                )));
+    }
+
+    // customers in the order their ids were asked for, repeated ids once, ids without a customer as missing
+    public Mono<CustomerMultiGetResponse> getCustomersByIds(List<Integer> customerIds) {
+        Set<Integer> ids;
+        try {
+            ids = CustomerService.multiGetIds(customerIds);
+        } catch (RequestValidationException e) {
+            return Mono.error(e);
+        }
+        return customerDao.selectCustomersByIds(ids)
+                .collectList()
+                .map(customers -> CustomerService.multiGetResponse(ids, customers));
+    }
+
+    public Mono<Integer> addCustomer(CustomerRegistrationRequest customerRegistrationRequest) {
+        // add customer, the dao rejects an email which is already taken
+        Customer customer = new Customer(
+                customerRegistrationRequest.name(),
+                customerRegistrationRequest.email(),
+                customerRegistrationRequest.age()
+        );
+        return customerDao.insertCustomer(customer)
+                .map(Customer::getId);
+    }
+
+    public Mono<List<CustomerBatchRegistrationResult>> addCustomers(
+            List<CustomerRegistrationRequest> customerRegistrationRequests) {
+        List<CustomerBatchRegistrationResult.Status> statuses = new ArrayList<>();
+        List<Customer> customers;
+        try {
+            customers = CustomerService.batchCustomers(customerRegistrationRequests, statuses);
+        } catch (RequestValidationException e) {
+            return Mono.error(e);
+        }
+
+        // add customers one after the other, the ones whose email is already taken are left without id
+        return Flux.fromIterable(customers)
+                .filter(Objects::nonNull)
+                .concatMap(customer -> customerDao.insertCustomer(customer)
+                        .onErrorResume(DuplicateResourceException.class, e -> Mono.empty()))
+                .then(Mono.fromSupplier(() -> CustomerService.batchResults(
+                        customerRegistrationRequests, customers, statuses)));
+    }
+
+    // expectedVersion null deletes unconditionally
+    public Mono<Void> deleteCustomerById(Integer customerId, Long expectedVersion) {
+        // delete customer, the dao rejects a version which is no longer current
+        Mono<Boolean> deleted = expectedVersion == null
+                ? customerDao.deleteCustomerById(customerId)
+                : customerDao.deleteCustomerById(customerId, expectedVersion);
+        return deleted.flatMap(existed -> existed
+                ? Mono.<Void>empty()
+                : Mono.error(new ResourceNotFoundException(
+                "Customer with id: [%s] not found.".formatted(customerId)
+        )));
+    }
+
+    // expectedVersion null updates unconditionally
+    public Mono<Void> updateCustomer(Integer customerId, CustomerUpdateRequest customerUpdateRequest, Long expectedVersion) {
+        // update only what changed in one statement, the dao rejects an email which is already taken
+        // and a version which is no longer current
+        return customerDao.patchCustomer(customerId, customerUpdateRequest, expectedVersion)
+                .flatMap(result -> switch (result.status()) {
+                    case NOT_FOUND -> Mono.error(new ResourceNotFoundException(
+                            "Customer with id: [%s] not found.".formatted(customerId)
+                    ));
+                    case NO_CHANGES -> Mono.error(new RequestValidationException(
+                            "No data changes found."
+                    ));
+                    case UPDATED -> Mono.empty();
+                });
+    }
+}
@@ -0,0 +1,107 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Concurrent calls for the same key share one execution. The first caller runs it on its own thread, the ones
+// arriving while it runs wait for its result for at most timeout and are counted as coalesced. A failure is
+// rethrown to every caller of that execution but not remembered, the next call runs again. A waiter which times
+// out gives up alone, the execution keeps running for the others and later callers still join it, so a slow
+// database sees one query per key instead of a new one for every impatient caller.
+public class SingleFlight<K, V> implements MeterBinder {
+    private final String name;
+    private final Duration timeout;
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public SingleFlight(String name, Duration timeout) {
+        this.name = name;
+        this.timeout = timeout;
+    }
+
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.increment();
+            return await(key, running);
+        }
+
+        executions.increment();
+        try {
+            V value = call.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    public long executionCount() {
+        return executions.sum();
+    }
+
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long timeoutCount() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindCounter(registry, "executed", executions);
+        bindCounter(registry, "coalesced", coalesced);
+        bindCounter(registry, "timed-out", timeouts);
+    }
+
+    private void bindCounter(MeterRegistry registry, String result, LongAdder adder) {
+        FunctionCounter.builder(name + ".calls", adder, LongAdder::sum)
+                .description("Calls by whether they ran, joined a running call or gave up waiting for it")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private V await(K key, CompletableFuture<V> flight) {
+        try {
+            return flight.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            // the waiter sees the same exception as the caller which ran it
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new ServiceUnavailableException(
+                    "Timed out waiting for %s [%s].".formatted(name, key)
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(
+                    "Interrupted waiting for %s [%s].".formatted(name, key)
+            );
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.akibazcode.customer;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+// Only active with spring.threads.virtual.enabled=true, which makes Tomcat run every request on a virtual thread.
+// The request thread is no longer the limit on concurrent DAO calls, so the DataSource gets one instead.
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public static BeanPostProcessor concurrencyLimitedDataSourcePostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConcurrencyLimitedDataSource)) {
+                    return new ConcurrencyLimitedDataSource(
+                            dataSource,
+                            environment.getProperty("customer.jdbc.max-concurrency", Integer.class, 10),
+                            environment.getProperty("customer.jdbc.acquire-timeout", Duration.class, Duration.ofSeconds(30))
+                    );
+                }
+                return bean;
+            }
+        };
+    }
+}
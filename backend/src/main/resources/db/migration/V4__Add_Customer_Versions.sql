@@ -0,0 +1,28 @@
+-- bumped by every update of the row, the daos write version = version + 1
+ALTER TABLE customer
+ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+-- Table-level version, the sum of all slots. Every statement writing to customer bumps one slot inside its own
+-- transaction, so the sum only moves once the write is visible. Writers are spread over the slots by backend pid
+-- so that they do not all queue on one row lock.
+CREATE TABLE customer_table_version (
+    slot INT PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO customer_table_version (slot, version)
+SELECT slot, 0
+FROM generate_series(0, 15) AS slot;
+
+CREATE FUNCTION bump_customer_table_version() RETURNS trigger AS $$
+BEGIN
+    UPDATE customer_table_version
+    SET version = version + 1
+    WHERE slot = pg_backend_pid() % 16;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER customer_table_version_bump
+AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON customer
+FOR EACH STATEMENT EXECUTE FUNCTION bump_customer_table_version();
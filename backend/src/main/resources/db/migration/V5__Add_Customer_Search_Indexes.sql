@@ -0,0 +1,6 @@
+-- name prefix search runs lower(name) LIKE 'prefix%', which only a btree with pattern ops can serve
+-- outside the C collation
+CREATE INDEX customer_name_lower_pattern_idx ON customer (lower(name) text_pattern_ops);
+
+-- age range search, email search is served by the index of customer_email_unique
+CREATE INDEX customer_age_idx ON customer (age);
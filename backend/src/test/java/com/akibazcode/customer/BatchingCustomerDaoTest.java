@@ -0,0 +1,152 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchingCustomerDaoTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    private volatile RuntimeException failure;
+    // holds the query until counted down
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean blocking;
+    // holds Baki with id 1 and Maki with id 2
+    private final CustomerDao customerDao = new CustomerListDataAccessService() {
+        @Override
+        public List<Customer> selectCustomersByIds(Collection<Integer> customerIds) {
+            batches.add(List.copyOf(customerIds));
+            if (blocking) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return super.selectCustomersByIds(customerIds);
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentLookupsOfDifferentIdsShareOneQuery() throws Exception {
+        // Given
+        // the window is long enough that only the full batch can trigger the query
+        BatchingCustomerDao underTest = new BatchingCustomerDao(
+                customerDao, Duration.ofSeconds(30), 3, TIMEOUT, new SimpleMeterRegistry());
+
+        // When
+        Future<Optional<Customer>> baki = executor.submit(() -> underTest.selectCustomerById(1));
+        Future<Optional<Customer>> maki = executor.submit(() -> underTest.selectCustomerById(2));
+        Future<Optional<Customer>> missing = executor.submit(() -> underTest.selectCustomerById(99));
+
+        //Then
+        assertThat(baki.get(5, TimeUnit.SECONDS)).hasValueSatisfying(
+                c -> assertThat(c.getName()).isEqualTo("Baki"));
+        assertThat(maki.get(5, TimeUnit.SECONDS)).hasValueSatisfying(
+                c -> assertThat(c.getName()).isEqualTo("Maki"));
+        assertThat(missing.get(5, TimeUnit.SECONDS)).isEmpty();
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder(1, 2, 99);
+    }
+
+    @Test
+    void lookupRunsAloneAfterWindow() {
+        // Given
+        BatchingCustomerDao underTest = new BatchingCustomerDao(
+                customerDao, Duration.ofMillis(1), 100, TIMEOUT, new SimpleMeterRegistry());
+
+        // When
+        Optional<Customer> actual = underTest.selectCustomerById(2);
+
+        //Then
+        assertThat(actual).hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Maki"));
+        assertThat(batches).containsExactly(List.of(2));
+    }
+
+    @Test
+    void failureReachesEveryCallerOfTheBatch() {
+        // Given
+        failure = new IllegalStateException("database down");
+        BatchingCustomerDao underTest = new BatchingCustomerDao(
+                customerDao, Duration.ofSeconds(30), 2, TIMEOUT, new SimpleMeterRegistry());
+
+        // When
+        Future<Optional<Customer>> baki = executor.submit(() -> underTest.selectCustomerById(1));
+        Future<Optional<Customer>> maki = executor.submit(() -> underTest.selectCustomerById(2));
+
+        //Then
+        for (Future<Optional<Customer>> lookup : List.of(baki, maki)) {
+            assertThatThrownBy(() -> lookup.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("database down");
+        }
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    void lookupGivesUpWhenTheQueryOfItsBatchTakesTooLong() throws Exception {
+        // Given
+        blocking = true;
+        BatchingCustomerDao underTest = new BatchingCustomerDao(
+                customerDao, Duration.ofSeconds(30), 2, Duration.ofMillis(100), new SimpleMeterRegistry());
+
+        // When
+        Future<Optional<Customer>> baki = executor.submit(() -> underTest.selectCustomerById(1));
+        Future<Optional<Customer>> maki = executor.submit(() -> underTest.selectCustomerById(2));
+
+        //Then
+        // one of them runs the blocked query, the other one only waits for it
+        Future<Optional<Customer>> waiter = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (waiter == null && System.nanoTime() < deadline) {
+            waiter = baki.isDone() ? baki : maki.isDone() ? maki : null;
+            Thread.sleep(10);
+        }
+        assertThat(waiter).isNotNull();
+        assertThatThrownBy(waiter::get).hasCauseInstanceOf(ServiceUnavailableException.class);
+
+        release.countDown();
+        Future<Optional<Customer>> runner = waiter == baki ? maki : baki;
+        assertThat(runner.get(5, TimeUnit.SECONDS)).isPresent();
+    }
+
+    @Test
+    void zeroWindowLooksUpDirectly() {
+        // Given
+        BatchingCustomerDao underTest = new BatchingCustomerDao(
+                customerDao, Duration.ZERO, 100, TIMEOUT, new SimpleMeterRegistry());
+
+        // When
+        Optional<Customer> actual = underTest.selectCustomerById(1);
+
+        //Then
+        assertThat(actual).isPresent();
+        assertThat(batches).isEmpty();
+    }
+}
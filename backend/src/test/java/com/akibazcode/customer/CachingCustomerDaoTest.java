@@ -0,0 +1,226 @@
+package com.akibazcode.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingCustomerDaoTest {
+
+    private CachingCustomerDao underTest;
+
+    @Mock
+    private CustomerDao customerDao;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CachingCustomerDao(
+                customerDao,
+                100,
+                Duration.ofMinutes(10),
+                Duration.ofSeconds(30),
+                Duration.ofSeconds(5)
+        );
+    }
+
+    @Test
+    void selectCustomerByIdIsServedFromCache() {
+        // Given
+        int id = 1;
+        Customer customer = new Customer(id, "baki", "baki@test.com", 35);
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
+
+        // When
+        Optional<Customer> first = underTest.selectCustomerById(id);
+        Optional<Customer> second = underTest.selectCustomerById(id);
+        //Then
+        verify(customerDao, times(1)).selectCustomerById(id);
+        assertThat(first).hasValue(customer);
+        assertThat(second).hasValue(customer);
+        assertThat(underTest.stats().hitCount()).isEqualTo(1);
+        assertThat(underTest.stats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void selectCustomerByIdReturnsCopies() {
+        // Given
+        int id = 1;
+        when(customerDao.selectCustomerById(id))
+                .thenReturn(Optional.of(new Customer(id, "baki", "baki@test.com", 35)));
+
+        // When
+        underTest.selectCustomerById(id).orElseThrow().setName("changed");
+        //Then
+        assertThat(underTest.selectCustomerById(id)).hasValueSatisfying(
+                c -> assertThat(c.getName()).isEqualTo("baki")
+        );
+    }
+
+    @Test
+    void missingCustomerIsCachedAsNegativeEntry() {
+        // Given
+        int id = 1;
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.empty());
+
+        // When
+        underTest.selectCustomerById(id);
+        Optional<Customer> actual = underTest.selectCustomerById(id);
+        boolean exists = underTest.existsCustomerWithId(id);
+        //Then
+        verify(customerDao, times(1)).selectCustomerById(id);
+        verify(customerDao, never()).existsCustomerWithId(anyInt());
+        assertThat(actual).isEmpty();
+        assertThat(exists).isFalse();
+    }
+
+    @Test
+    void insertCustomerInvalidatesNegativeEntry() {
+        // Given
+        int id = 1;
+        Customer customer = new Customer(id, "baki", "baki@test.com", 35);
+        when(customerDao.selectCustomerById(id))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(customer));
+        underTest.selectCustomerById(id);
+
+        // When
+        underTest.insertCustomer(customer);
+        //Then
+        assertThat(underTest.selectCustomerById(id)).hasValue(customer);
+        verify(customerDao).insertCustomer(customer);
+    }
+
+    @Test
+    void insertCustomersInvalidatesInsertedIds() {
+        // Given
+        int id = 1;
+        Customer customer = new Customer(id, "baki", "baki@test.com", 35);
+        when(customerDao.selectCustomerById(id))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(customer));
+        underTest.selectCustomerById(id);
+
+        // When
+        underTest.insertCustomers(List.of(customer, new Customer("maki", "maki@test.com", 33)));
+        //Then
+        assertThat(underTest.selectCustomerById(id)).hasValue(customer);
+    }
+
+    @Test
+    void updateCustomerInvalidatesEntry() {
+        // Given
+        int id = 1;
+        Customer customer = new Customer(id, "baki", "baki@test.com", 35);
+        Customer update = new Customer(id, "maki", "baki@test.com", 35);
+        when(customerDao.selectCustomerById(id))
+                .thenReturn(Optional.of(customer))
+                .thenReturn(Optional.of(update));
+        underTest.selectCustomerById(id);
+
+        // When
+        underTest.updateCustomer(update);
+        //Then
+        verify(customerDao).updateCustomer(update);
+        assertThat(underTest.selectCustomerById(id)).hasValue(update);
+    }
+
+    @Test
+    void patchCustomerInvalidatesEntry() {
+        // Given
+        int id = 1;
+        Customer customer = new Customer(id, "baki", "baki@test.com", 35);
+        Customer patched = new Customer(id, "maki", "baki@test.com", 35);
+        CustomerUpdateRequest update = new CustomerUpdateRequest("maki", null, null);
+        when(customerDao.selectCustomerById(id))
+                .thenReturn(Optional.of(customer))
+                .thenReturn(Optional.of(patched));
+        when(customerDao.patchCustomer(id, update, null)).thenReturn(CustomerPatchResult.updated(35));
+        underTest.selectCustomerById(id);
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(id, update, null);
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.updated(35));
+        assertThat(underTest.selectCustomerById(id)).hasValue(patched);
+    }
+
+    @Test
+    void deleteCustomerByIdInvalidatesEntry() {
+        // Given
+        int id = 1;
+        when(customerDao.selectCustomerById(id))
+                .thenReturn(Optional.of(new Customer(id, "baki", "baki@test.com", 35)))
+                .thenReturn(Optional.empty());
+        underTest.selectCustomerById(id);
+
+        // When
+        underTest.deleteCustomerById(id);
+        //Then
+        verify(customerDao).deleteCustomerById(id);
+        assertThat(underTest.selectCustomerById(id)).isEmpty();
+    }
+
+    @Test
+    void loadOverlappingWriteIsNotCached() {
+        // Given
+        int id = 1;
+        Customer customer = new Customer(id, "baki", "baki@test.com", 35);
+        Customer update = new Customer(id, "maki", "baki@test.com", 35);
+        // the update commits while the first load is still reading the old row
+        when(customerDao.selectCustomerById(id))
+                .thenAnswer(invocation -> {
+                    underTest.updateCustomer(update);
+                    return Optional.of(customer);
+                })
+                .thenReturn(Optional.of(update));
+
+        // When
+        Optional<Customer> first = underTest.selectCustomerById(id);
+        Optional<Customer> second = underTest.selectCustomerById(id);
+        //Then
+        assertThat(first).hasValue(customer);
+        assertThat(second).hasValue(update);
+        verify(customerDao, times(2)).selectCustomerById(id);
+    }
+
+    @Test
+    void selectCustomersByIdsQueriesOnlyUncachedIds() {
+        // Given
+        Customer baki = new Customer(1, "baki", "baki@test.com", 35);
+        Customer maki = new Customer(2, "maki", "maki@test.com", 33);
+        when(customerDao.selectCustomerById(1)).thenReturn(Optional.of(baki));
+        when(customerDao.selectCustomersByIds(List.of(2, 3))).thenReturn(List.of(maki));
+        underTest.selectCustomerById(1);
+
+        // When
+        List<Customer> actual = underTest.selectCustomersByIds(List.of(1, 2, 3));
+        //Then
+        assertThat(actual).containsExactlyInAnyOrder(baki, maki);
+        // the query cached what it found and what it did not
+        assertThat(underTest.selectCustomerById(2)).hasValue(maki);
+        assertThat(underTest.selectCustomerById(3)).isEmpty();
+        verify(customerDao, never()).selectCustomerById(2);
+        verify(customerDao, never()).selectCustomerById(3);
+    }
+
+    @Test
+    void existsCustomerWithIdFallsThroughOnMiss() {
+        // Given
+        int id = 1;
+        when(customerDao.existsCustomerWithId(id)).thenReturn(true);
+
+        // When
+        boolean actual = underTest.existsCustomerWithId(id);
+        //Then
+        assertThat(actual).isTrue();
+    }
+}
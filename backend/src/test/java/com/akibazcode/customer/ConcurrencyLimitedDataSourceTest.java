@@ -0,0 +1,97 @@
+package com.akibazcode.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ConcurrencyLimitedDataSourceTest {
+
+    @Mock
+    private DataSource dataSource;
+    private ConcurrencyLimitedDataSource underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ConcurrencyLimitedDataSource(dataSource, 2, Duration.ofMillis(50));
+    }
+
+    @Test
+    void closingConnectionReleasesPermitOnce() throws SQLException {
+        // Given
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+
+        // When
+        Connection limited = underTest.getConnection();
+        assertThat(underTest.availablePermits()).isEqualTo(1);
+        limited.close();
+        limited.close();
+
+        //Then
+        assertThat(underTest.availablePermits()).isEqualTo(2);
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    void getConnectionTimesOutWhenAllPermitsAreTaken() throws SQLException {
+        // Given
+        when(dataSource.getConnection()).thenReturn(mock(Connection.class));
+        underTest.getConnection();
+        underTest.getConnection();
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.getConnection())
+                .isInstanceOf(SQLTransientConnectionException.class)
+                .hasMessage("Timed out after 50ms waiting for a database permit");
+    }
+
+    @Test
+    void maxConcurrencyCanBeChangedWhileConnectionsAreOpen() throws SQLException {
+        // Given
+        when(dataSource.getConnection()).thenReturn(mock(Connection.class));
+        Connection first = underTest.getConnection();
+        Connection second = underTest.getConnection();
+
+        // When
+        underTest.setMaxConcurrency(1);
+        first.close();
+
+        //Then
+        // the open connection still counts against the lower limit
+        assertThat(underTest.availablePermits()).isZero();
+        second.close();
+        assertThat(underTest.availablePermits()).isEqualTo(1);
+        underTest.setMaxConcurrency(3);
+        assertThat(underTest.availablePermits()).isEqualTo(3);
+    }
+
+    @Test
+    void failedGetConnectionReleasesPermit() throws SQLException {
+        // Given
+        when(dataSource.getConnection()).thenThrow(new SQLException("pool exhausted"));
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.getConnection())
+                .isInstanceOf(SQLException.class)
+                .hasMessage("pool exhausted");
+        assertThat(underTest.availablePermits()).isEqualTo(2);
+    }
+}
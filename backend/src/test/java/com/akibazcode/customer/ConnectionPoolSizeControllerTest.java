@@ -0,0 +1,83 @@
+package com.akibazcode.customer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConnectionPoolSizeControllerTest {
+    private static final int MIN_SIZE = 5;
+    private static final int MAX_SIZE = 50;
+
+    @Test
+    void growsWhileRequestsWaitAndLatencyHolds() {
+        // Given
+        ConnectionPoolSizeController.Sample sample = new ConnectionPoolSizeController.Sample(
+                16, 2000, 0.005, 0.005, 4, false, 100
+        );
+
+        // When
+        int actual = ConnectionPoolSizeController.targetSize(sample, MIN_SIZE, MAX_SIZE);
+
+        // Then
+        assertThat(actual).isEqualTo(20);
+    }
+
+    @Test
+    void shrinksWhenLatencyRisesDespiteWaiting() {
+        // Given
+        ConnectionPoolSizeController.Sample sample = new ConnectionPoolSizeController.Sample(
+                40, 2000, 0.020, 0.005, 10, true, 100
+        );
+
+        // When
+        int actual = ConnectionPoolSizeController.targetSize(sample, MIN_SIZE, MAX_SIZE);
+
+        // Then
+        assertThat(actual).isLessThan(40);
+    }
+
+    @Test
+    void doesNotGrowPastRequestsInFlight() {
+        // Given
+        ConnectionPoolSizeController.Sample sample = new ConnectionPoolSizeController.Sample(
+                16, 2000, 0.005, 0.005, 4, false, 18
+        );
+
+        // When
+        int actual = ConnectionPoolSizeController.targetSize(sample, MIN_SIZE, MAX_SIZE);
+
+        // Then
+        assertThat(actual).isEqualTo(18);
+    }
+
+    @Test
+    void shrinksHalfwayTowardsBusyConnectionsWithoutWaiting() {
+        // Given
+        // 1000 calls/s at 4 ms keep 4 connections busy, plus an allowance of 2
+        ConnectionPoolSizeController.Sample sample = new ConnectionPoolSizeController.Sample(
+                30, 1000, 0.004, 0.004, 0, false, 100
+        );
+
+        // When
+        int actual = ConnectionPoolSizeController.targetSize(sample, MIN_SIZE, MAX_SIZE);
+
+        // Then
+        assertThat(actual).isEqualTo(18);
+    }
+
+    @Test
+    void staysWithinBounds() {
+        // Given
+        ConnectionPoolSizeController.Sample idle = new ConnectionPoolSizeController.Sample(
+                6, 1, 0.001, 0.001, 0, false, 0
+        );
+        ConnectionPoolSizeController.Sample overloaded = new ConnectionPoolSizeController.Sample(
+                50, 5000, 0.005, 0.005, 100, true, 1000
+        );
+
+        // When
+        // Then
+        assertThat(ConnectionPoolSizeController.targetSize(idle, MIN_SIZE, MAX_SIZE)).isEqualTo(MIN_SIZE);
+        assertThat(ConnectionPoolSizeController.targetSize(overloaded, MIN_SIZE, MAX_SIZE)).isEqualTo(MAX_SIZE);
+    }
+}
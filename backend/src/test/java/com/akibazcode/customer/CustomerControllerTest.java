@@ -0,0 +1,63 @@
+package com.akibazcode.customer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerControllerTest {
+
+    private MockMvc mockMvc;
+
+    @Mock
+    private CustomerService customerService;
+    @Mock
+    private CustomerListSnapshotCache customerListSnapshotCache;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(
+                new CustomerController(customerService, new ObjectMapper(), customerListSnapshotCache)
+        ).build();
+    }
+
+    @Test
+    void getCustomersRejectsLimitAndIdsTogether() throws Exception {
+        // When
+        var result = mockMvc.perform(get("/api/v1/customers").param("limit", "10").param("ids", "1,2"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        //Then
+        assertThat(result.getResolvedException()).hasMessage(CustomerController.LIMIT_AND_IDS_MESSAGE);
+        verifyNoInteractions(customerService, customerListSnapshotCache);
+    }
+
+    @Test
+    void getCustomersByIdsWithoutLimit() throws Exception {
+        // Given
+        when(customerService.getCustomersByIds(List.of(1, 2)))
+                .thenReturn(new CustomerMultiGetResponse(List.of(), List.of(1, 2)));
+
+        // When
+        mockMvc.perform(get("/api/v1/customers").param("ids", "1,2"))
+                .andExpect(status().isOk());
+
+        //Then
+        verify(customerService).getCustomersByIds(List.of(1, 2));
+    }
+}
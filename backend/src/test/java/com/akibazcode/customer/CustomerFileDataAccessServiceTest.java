@@ -0,0 +1,245 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerFileDataAccessServiceTest {
+
+    private static final DataSize SEGMENT_SIZE = DataSize.ofKilobytes(4);
+
+    @TempDir
+    private Path directory;
+    private CustomerFileDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        underTest.close();
+    }
+
+    @Test
+    void insertCustomer() {
+        // Given
+        Customer customer = new Customer("Bäki", "baki@test.com", 35);
+
+        // When
+        underTest.insertCustomer(customer);
+
+        //Then
+        assertThat(customer.getId()).isEqualTo(1);
+        assertThat(underTest.selectCustomerById(1)).hasValue(customer);
+        assertThat(underTest.existsCustomerWithEmail("baki@test.com")).isTrue();
+        assertThat(underTest.existsCustomerWithEmail("maki@test.com")).isFalse();
+    }
+
+    @Test
+    void insertCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        Customer customer = new Customer("maki", "baki@test.com", 33);
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.insertCustomer(customer))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+        assertThat(customer.getId()).isNull();
+    }
+
+    @Test
+    void updateAndDeleteCustomer() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        underTest.insertCustomer(new Customer("maki", "maki@test.com", 33));
+
+        // When
+        underTest.updateCustomer(new Customer(1, "baki", "baki@new.com", 36));
+        underTest.deleteCustomerById(2);
+
+        //Then
+        assertThat(underTest.selectAllCustomers())
+                .containsExactly(new Customer(1, "baki", "baki@new.com", 36));
+        assertThat(underTest.existsCustomerWithEmail("baki@test.com")).isFalse();
+        assertThat(underTest.existsCustomerWithEmail("maki@test.com")).isFalse();
+    }
+
+    @Test
+    void updateCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        underTest.insertCustomer(new Customer("maki", "maki@test.com", 33));
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.updateCustomer(new Customer(2, "maki", "baki@test.com", 33)))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+        assertThat(underTest.selectCustomerById(2))
+                .hasValue(new Customer(2, "maki", "maki@test.com", 33));
+    }
+
+    @Test
+    void patchCustomer() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        underTest.insertCustomer(new Customer("maki", "maki@test.com", 33));
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(1, new CustomerUpdateRequest(null, "baki@new.com", 36), null);
+
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.updated(35));
+        assertThat(underTest.selectCustomerById(1)).hasValue(new Customer(1, "baki", "baki@new.com", 36));
+        assertThat(underTest.existsCustomerWithEmail("baki@test.com")).isFalse();
+    }
+
+    @Test
+    void patchCustomerTellsNotFoundNoChangesTakenEmailAndVersionApart() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        underTest.insertCustomer(new Customer("maki", "maki@test.com", 33));
+
+        // When
+        //Then
+        assertThat(underTest.patchCustomer(3, new CustomerUpdateRequest("foo", null, null), null))
+                .isEqualTo(CustomerPatchResult.NOT_FOUND);
+        assertThat(underTest.patchCustomer(1, new CustomerUpdateRequest("baki", null, 35), null))
+                .isEqualTo(CustomerPatchResult.NO_CHANGES);
+        assertThatThrownBy(() -> underTest.patchCustomer(2, new CustomerUpdateRequest(null, "baki@test.com", null), null))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+        // versions are not tracked, so none can match
+        assertThatThrownBy(() -> underTest.patchCustomer(2, new CustomerUpdateRequest("foo", null, null), 0L))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThat(underTest.selectCustomerById(2)).hasValue(new Customer(2, "maki", "maki@test.com", 33));
+    }
+
+    @Test
+    void reopenRestoresCustomersFromCheckpointAndLogTail() throws IOException {
+        // Given
+        insertCustomers(100);
+        underTest.checkpoint();
+        insertCustomers(100, 50);
+        underTest.deleteCustomerById(7);
+        underTest.close();
+
+        // When
+        underTest = open();
+
+        //Then
+        assertThat(underTest.selectAllCustomers()).hasSize(149);
+        assertThat(underTest.existsCustomerWithId(7)).isFalse();
+        assertThat(underTest.selectCustomerById(150))
+                .hasValue(new Customer(150, "customer 149", "customer-149@test.com", 49));
+    }
+
+    @Test
+    void checkpointAfterCloseDoesNothing() throws IOException {
+        // Given
+        insertCustomers(10);
+        underTest.close();
+        Files.delete(directory.resolve("index.checkpoint"));
+
+        // When
+        underTest.checkpoint();
+        underTest.close();
+
+        //Then
+        assertThat(directory.resolve("index.checkpoint")).doesNotExist();
+        assertThat(directory.resolve("index.checkpoint.tmp")).doesNotExist();
+    }
+
+    @Test
+    void reopenReplaysWholeLogWithoutCheckpoint() throws IOException {
+        // Given
+        insertCustomers(100);
+        underTest.deleteCustomerById(7);
+        underTest.close();
+        Files.delete(directory.resolve("index.checkpoint"));
+
+        // When
+        underTest = open();
+        Customer customer = new Customer("new", "new@test.com", 20);
+        underTest.insertCustomer(customer);
+
+        //Then
+        assertThat(underTest.selectAllCustomers()).hasSize(100);
+        assertThat(underTest.existsCustomerWithId(7)).isFalse();
+        assertThat(customer.getId()).isEqualTo(101);
+    }
+
+    @Test
+    void compactRemovesSegmentsWithoutLiveRecords() throws IOException {
+        // Given
+        insertCustomers(200);
+        IntStream.rangeClosed(1, 190).forEach(underTest::deleteCustomerById);
+        long segmentsBefore = segmentFiles();
+
+        // When
+        underTest.compact();
+
+        //Then
+        assertThat(segmentFiles()).isLessThan(segmentsBefore);
+        assertThat(underTest.selectAllCustomers())
+                .extracting(Customer::getId)
+                .containsExactlyElementsOf(IntStream.rangeClosed(191, 200).boxed().toList());
+    }
+
+    @Test
+    void deletedCustomersStayDeletedAfterCompactionAndFullReplay() throws IOException {
+        // Given
+        insertCustomers(200);
+        IntStream.rangeClosed(1, 150).forEach(underTest::deleteCustomerById);
+        underTest.compact();
+        underTest.close();
+        Files.delete(directory.resolve("index.checkpoint"));
+
+        // When
+        underTest = open();
+
+        //Then
+        assertThat(underTest.selectAllCustomers())
+                .extracting(Customer::getId)
+                .containsExactlyElementsOf(IntStream.rangeClosed(151, 200).boxed().toList());
+    }
+
+    private void insertCustomers(int count) {
+        insertCustomers(0, count);
+    }
+
+    private void insertCustomers(int from, int count) {
+        List<Customer> customers = IntStream.range(from, from + count)
+                .mapToObj(i -> new Customer("customer " + i, "customer-" + i + "@test.com", i % 100))
+                .toList();
+        underTest.insertCustomers(customers);
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+
+    private CustomerFileDataAccessService open() {
+        return new CustomerFileDataAccessService(directory, SEGMENT_SIZE, 0.5);
+    }
+}
@@ -1,15 +1,26 @@
 package com.akibazcode.customer;
 
 import com.akibazcode.AbstractTestcontainers;
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
 
@@ -40,6 +51,48 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
         assertThat(actual).isNotEmpty();
     }
 
+    @Test
+    void selectCustomersAfterId() {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            underTest.insertCustomer(new Customer(
+                    FAKER.name().fullName(),
+                    FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                    20
+            ));
+        }
+        List<Integer> ids = underTest.selectAllCustomers().stream()
+                .map(Customer::getId)
+                .sorted()
+                .toList();
+        Integer afterId = ids.get(ids.size() - 3);
+
+        // When
+        List<Customer> actual = underTest.selectCustomersAfterId(afterId, 1);
+        //Then
+        assertThat(actual).extracting(Customer::getId)
+                .containsExactly(ids.get(ids.size() - 2));
+    }
+
+    @Test
+    void forEachCustomer() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        );
+        underTest.insertCustomer(customer);
+        List<Customer> actual = new ArrayList<>();
+
+        // When
+        underTest.forEachCustomer(actual::add);
+        //Then
+        assertThat(actual).containsExactlyInAnyOrderElementsOf(underTest.selectAllCustomers());
+        assertThat(actual).extracting(Customer::getEmail).contains(email);
+    }
+
     @Test
     void selectCustomerById() {
         // Given
@@ -75,6 +128,27 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
         assertThat(actual).isEmpty();
     }
 
+    @Test
+    void selectCustomersByIds() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        ));
+        Integer id = getCustomerId(email);
+
+        // When
+        List<Customer> actual = underTest.selectCustomersByIds(List.of(id, 0, id));
+        List<Customer> none = underTest.selectCustomersByIds(List.of());
+
+        //Then
+        assertThat(actual).extracting(Customer::getId).containsExactly(id);
+        assertThat(actual.get(0).getEmail()).isEqualTo(email);
+        assertThat(none).isEmpty();
+    }
+
     @Test
     void insertCustomer() {
         // Given
@@ -99,6 +173,71 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
         ));
     }
 
+    @Test
+    void insertCustomers() {
+        // Given
+        String takenEmail = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                takenEmail,
+                20
+        ));
+        Customer taken = new Customer(
+                FAKER.name().fullName(),
+                takenEmail,
+                30
+        );
+        Customer free = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                40
+        );
+
+        // When
+        underTest.insertCustomers(List.of(taken, free));
+        //Then
+        assertThat(taken.getId()).isNull();
+        assertThat(free.getId()).isNotNull();
+        assertThat(underTest.selectCustomerById(free.getId())).isPresent().hasValue(free);
+    }
+
+    @Test
+    void insertCustomerSetsGeneratedId() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        );
+        // When
+        underTest.insertCustomer(customer);
+        //Then
+        assertThat(customer.getId()).isEqualTo(getCustomerId(email));
+    }
+
+    @Test
+    void insertCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(new Customer(
+                FAKER.name().fullName(),
+                email,
+                20
+        ));
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                email,
+                30
+        );
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.insertCustomer(customer))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+        assertThat(customer.getId()).isNull();
+    }
+
     @Test
     void existsCustomerWithEmail() {
         // Given
@@ -169,10 +308,13 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
         underTest.insertCustomer(customer);
         Integer customerId = getCustomerId(email);
         // When
-        underTest.deleteCustomerById(customerId);
+        boolean deleted = underTest.deleteCustomerById(customerId);
+        boolean deletedAgain = underTest.deleteCustomerById(customerId);
         //Then
         Optional<Customer> actual = underTest.selectCustomerById(customerId);
         assertThat(actual).isNotPresent();
+        assertThat(deleted).isTrue();
+        assertThat(deletedAgain).isFalse();
     }
 
     @Test
@@ -359,6 +501,209 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestcontainers {
         assertThat(actualCustomer).isPresent().hasValue(customer);
     }
 
+    @Test
+    void patchCustomerUpdatesOnlyGivenFields() {
+        // Given
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        underTest.insertCustomer(customer);
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(
+                customer.getId(),
+                new CustomerUpdateRequest("foo", null, 11),
+                null
+        );
+
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.updated(20));
+        assertThat(underTest.selectCustomerById(customer.getId())).isPresent().hasValue(new Customer(
+                customer.getId(),
+                "foo",
+                customer.getEmail(),
+                11
+        ));
+    }
+
+    @Test
+    void patchCustomerReturnsNoChangesWhenValuesAreTheSame() {
+        // Given
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        underTest.insertCustomer(customer);
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(
+                customer.getId(),
+                new CustomerUpdateRequest(customer.getName(), customer.getEmail(), null),
+                null
+        );
+
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.NO_CHANGES);
+    }
+
+    @Test
+    void patchCustomerReturnsNotFoundWhenIdNotPresent() {
+        // Given
+        int id = 0;
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(id, new CustomerUpdateRequest("foo", null, null), null);
+
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.NOT_FOUND);
+    }
+
+    @Test
+    void patchCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        Customer existing = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        underTest.insertCustomer(existing);
+        underTest.insertCustomer(customer);
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.patchCustomer(
+                customer.getId(),
+                new CustomerUpdateRequest(null, existing.getEmail(), null),
+                null
+        ))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+    }
+
+    @Test
+    void patchCustomerBumpsVersion() {
+        // Given
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        underTest.insertCustomer(customer);
+        long version = underTest.selectCustomerVersion(customer.getId()).orElseThrow();
+        long tableVersion = underTest.selectCustomersVersion().orElseThrow();
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(
+                customer.getId(),
+                new CustomerUpdateRequest("foo", null, null),
+                version
+        );
+
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.updated(20));
+        assertThat(underTest.selectCustomerVersion(customer.getId())).hasValue(version + 1);
+        assertThat(underTest.selectCustomerById(customer.getId()))
+                .map(Customer::getVersion)
+                .hasValue(version + 1);
+        assertThat(underTest.selectCustomersVersion().orElseThrow()).isGreaterThan(tableVersion);
+    }
+
+    @Test
+    void patchCustomerThrowsExceptionWhenVersionDoesNotMatch() {
+        // Given
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        underTest.insertCustomer(customer);
+        long version = underTest.selectCustomerVersion(customer.getId()).orElseThrow();
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.patchCustomer(
+                customer.getId(),
+                new CustomerUpdateRequest("foo", null, null),
+                version + 1
+        ))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessage("Customer with id: [%s] has been modified.".formatted(customer.getId()));
+        assertThat(underTest.selectCustomerById(customer.getId()))
+                .map(Customer::getName)
+                .hasValue(customer.getName());
+    }
+
+    @Test
+    void patchCustomerReportsVersionConflictWithConcurrentIdenticalWrite() throws Exception {
+        // Given
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        underTest.insertCustomer(customer);
+        long version = underTest.selectCustomerVersion(customer.getId()).orElseThrow();
+        JdbcTemplate jdbcTemplate = getJDBCTemplate();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // another transaction writes the same name and holds the row until it commits
+        try (Connection other = jdbcTemplate.getDataSource().getConnection()) {
+            other.setAutoCommit(false);
+            try (PreparedStatement statement = other.prepareStatement(
+                    "UPDATE customer SET name = 'foo', version = version + 1 WHERE id = ?")) {
+                statement.setInt(1, customer.getId());
+                statement.executeUpdate();
+            }
+
+            // When
+            Future<CustomerPatchResult> patch = executor.submit(() -> underTest.patchCustomer(
+                    customer.getId(),
+                    new CustomerUpdateRequest("foo", null, null),
+                    version
+            ));
+            while (jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock'", Integer.class) == 0) {
+                Thread.sleep(10);
+            }
+            other.commit();
+
+            //Then
+            // the snapshot still has the expected version and the old name, the locked row has neither
+            assertThatThrownBy(() -> patch.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(PreconditionFailedException.class);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void deleteCustomerByIdWithVersion() {
+        // Given
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        underTest.insertCustomer(customer);
+        long version = underTest.selectCustomerVersion(customer.getId()).orElseThrow();
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.deleteCustomerById(customer.getId(), version + 1))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThat(underTest.existsCustomerWithId(customer.getId())).isTrue();
+        underTest.deleteCustomerById(customer.getId(), version);
+        assertThat(underTest.existsCustomerWithId(customer.getId())).isFalse();
+    }
+
     @NotNull
     private Integer getCustomerId(String email) {
         Integer id = underTest.selectAllCustomers().stream()
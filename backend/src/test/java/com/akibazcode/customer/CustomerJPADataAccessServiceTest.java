@@ -1,12 +1,29 @@
 package com.akibazcode.customer;
 
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 
 class CustomerJPADataAccessServiceTest {
@@ -18,10 +35,17 @@ class CustomerJPADataAccessServiceTest {
     @Mock
     private CustomerRepository customerRepository;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Query query;
+
     @BeforeEach
     void setUp() {
         autoCloseable = MockitoAnnotations.openMocks(this);
-        underTest = new CustomerJPADataAccessService(customerRepository);
+        when(entityManager.createNativeQuery(any(String.class))).thenReturn(query);
+        underTest = new CustomerJPADataAccessService(customerRepository, entityManager);
     }
 
     @AfterEach
@@ -38,6 +62,34 @@ class CustomerJPADataAccessServiceTest {
                 .findAll();
     }
 
+    @Test
+    void selectCustomersAfterId() {
+        // Given
+        int id = 1;
+        int limit = 10;
+        // When
+        underTest.selectCustomersAfterId(id, limit);
+        //Then
+        verify(customerRepository)
+                .findByIdGreaterThanOrderByIdAsc(id, Limit.of(limit));
+    }
+
+    @Test
+    void forEachCustomer() {
+        // Given
+        Customer first = new Customer(1, "baki", "baki@test.com", 35);
+        Customer second = new Customer(2, "maki", "maki@test.com", 33);
+        when(customerRepository.findByIdGreaterThanOrderByIdAsc(0, Limit.of(1000)))
+                .thenReturn(List.of(first, second));
+        when(customerRepository.findByIdGreaterThanOrderByIdAsc(2, Limit.of(1000)))
+                .thenReturn(List.of());
+        List<Customer> actual = new ArrayList<>();
+        // When
+        underTest.forEachCustomer(actual::add);
+        //Then
+        assertThat(actual).containsExactly(first, second);
+    }
+
     @Test
     void selectCustomerById() {
         // Given
@@ -49,6 +101,17 @@ class CustomerJPADataAccessServiceTest {
                 .findById(id);
     }
 
+    @Test
+    void selectCustomersByIds() {
+        // Given
+        List<Integer> ids = List.of(1, 2);
+        // When
+        underTest.selectCustomersByIds(ids);
+        //Then
+        verify(customerRepository)
+                .findAllById(ids);
+    }
+
     @Test
     void insertCustomer() {
         // Given
@@ -61,7 +124,71 @@ class CustomerJPADataAccessServiceTest {
         // When
         underTest.insertCustomer(customer);
         //Then
-        verify(customerRepository).save(customer);
+        verify(customerRepository).saveAndFlush(customer);
+    }
+
+    @Test
+    void insertCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        Customer customer = new Customer(
+                "baki",
+                "test@test.com",
+                35
+        );
+        when(customerRepository.saveAndFlush(customer)).thenThrow(new DataIntegrityViolationException(
+                "duplicate",
+                new ConstraintViolationException("duplicate", null, "customer_email_unique")
+        ));
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.insertCustomer(customer))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+    }
+
+    @Test
+    void insertCustomers() {
+        // Given
+        Customer taken = new Customer("baki", "baki@test.com", 35);
+        Customer free = new Customer("maki", "maki@test.com", 33);
+        when(customerRepository.findAllByEmailIn(List.of(taken.getEmail(), free.getEmail())))
+                .thenReturn(List.of(new Customer(1, "baki", "baki@test.com", 35)));
+        // When
+        underTest.insertCustomers(List.of(taken, free));
+        //Then
+        verify(customerRepository).saveAllAndFlush(List.of(free));
+    }
+
+    @Test
+    void insertCustomersInsertsRowByRowWhenAnEmailIsTakenConcurrently() {
+        // Given
+        Customer taken = new Customer("baki", "baki@test.com", 35);
+        Customer free = new Customer("maki", "maki@test.com", 33);
+        DataIntegrityViolationException duplicate = new DataIntegrityViolationException(
+                "duplicate",
+                new ConstraintViolationException("duplicate", null, "customer_email_unique")
+        );
+        when(customerRepository.findAllByEmailIn(List.of(taken.getEmail(), free.getEmail()))).thenReturn(List.of());
+        // the failed batch had already assigned ids
+        when(customerRepository.saveAllAndFlush(List.of(taken, free))).thenAnswer(invocation -> {
+            taken.setId(1);
+            free.setId(2);
+            throw duplicate;
+        });
+        when(customerRepository.saveAndFlush(taken)).thenAnswer(invocation -> {
+            taken.setId(3);
+            throw duplicate;
+        });
+        when(customerRepository.saveAndFlush(free)).thenAnswer(invocation -> {
+            assertThat(free.getId()).isNull();
+            free.setId(4);
+            return free;
+        });
+        // When
+        underTest.insertCustomers(List.of(taken, free));
+        //Then
+        assertThat(taken.getId()).isNull();
+        assertThat(free.getId()).isEqualTo(4);
     }
 
     @Test
@@ -88,11 +215,14 @@ class CustomerJPADataAccessServiceTest {
     void deleteCustomerById() {
         // Given
         int id = 1;
+        when(customerRepository.deleteByIdReturningCount(id)).thenReturn(1, 0);
 
         // When
-        underTest.deleteCustomerById(id);
+        boolean deleted = underTest.deleteCustomerById(id);
+        boolean deletedAgain = underTest.deleteCustomerById(id);
         //Then
-        verify(customerRepository).deleteById(id);
+        assertThat(deleted).isTrue();
+        assertThat(deletedAgain).isFalse();
     }
 
     @Test
@@ -108,4 +238,77 @@ class CustomerJPADataAccessServiceTest {
         //Then
         verify(customerRepository).save(customer);
     }
-}
\ No newline at end of file
+
+    @Test
+    void patchCustomerUpdatesInOneStatement() {
+        // Given
+        int id = 1;
+        when(query.getResultList()).thenReturn(List.<Object[]>of(new Object[]{35, 3L}));
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(id, new CustomerUpdateRequest("maki", null, null), 3L);
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.updated(35));
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(entityManager).createNativeQuery(sql.capture());
+        assertThat(sql.getValue())
+                .contains("SET name = :name, version = customer.version + 1")
+                .contains("customer.name IS DISTINCT FROM :name")
+                .contains("AND customer.version = :version")
+                .doesNotContain(":email", ":age");
+        verify(query).setParameter("id", id);
+        verify(query).setParameter("name", "maki");
+        verify(query).setParameter("version", 3L);
+        verify(customerRepository, never()).findById(any());
+    }
+
+    @Test
+    void patchCustomerReturnsNoChanges() {
+        // Given
+        int id = 1;
+        when(query.getResultList()).thenReturn(List.<Object[]>of(new Object[]{null, 3L}));
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(id, new CustomerUpdateRequest("baki", null, 35), null);
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.NO_CHANGES);
+    }
+
+    @Test
+    void patchCustomerReturnsNotFound() {
+        // Given
+        int id = 1;
+        when(query.getResultList()).thenReturn(List.of());
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(id, new CustomerUpdateRequest("maki", null, null), null);
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.NOT_FOUND);
+    }
+
+    @Test
+    void patchCustomerThrowsExceptionWhenVersionDoesNotMatch() {
+        // Given
+        int id = 1;
+        when(query.getResultList()).thenReturn(List.<Object[]>of(new Object[]{null, 4L}));
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.patchCustomer(id, new CustomerUpdateRequest("maki", null, null), 3L))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    @Test
+    void patchCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        int id = 1;
+        when(query.getResultList()).thenThrow(
+                new ConstraintViolationException("duplicate", null, "customer_email_unique"));
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.patchCustomer(id, new CustomerUpdateRequest(null, "maki@test.com", null), null))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+    }
+}
@@ -0,0 +1,196 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.DuplicateResourceException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerListDataAccessServiceTest {
+
+    private CustomerListDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerListDataAccessService();
+    }
+
+    @Test
+    void insertCustomer() {
+        // Given
+        Customer customer = new Customer("test", "test@test.com", 20);
+
+        // When
+        underTest.insertCustomer(customer);
+        //Then
+        assertThat(customer.getId()).isNotNull();
+        assertThat(underTest.selectCustomerById(customer.getId())).hasValue(customer);
+        assertThat(underTest.existsCustomerWithEmail("test@test.com")).isTrue();
+        assertThat(underTest.existsCustomerWithId(customer.getId())).isTrue();
+    }
+
+    @Test
+    void insertCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        Customer customer = new Customer("test", "baki@gmail.com", 20);
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.insertCustomer(customer))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+        assertThat(customer.getId()).isNull();
+    }
+
+    @Test
+    void selectCustomersAfterId() {
+        // Given
+        Customer customer = new Customer("test", "test@test.com", 20);
+        underTest.insertCustomer(customer);
+
+        // When
+        List<Customer> actual = underTest.selectCustomersAfterId(1, 10);
+        //Then
+        assertThat(actual).extracting(Customer::getId).containsExactly(2, customer.getId());
+    }
+
+    @Test
+    void selectCustomerByIdReturnsCopy() {
+        // Given
+        underTest.selectCustomerById(1).orElseThrow().setName("changed");
+
+        // When
+        Optional<Customer> actual = underTest.selectCustomerById(1);
+        //Then
+        assertThat(actual).hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Baki"));
+    }
+
+    @Test
+    void updateCustomerMovesEmailIndex() {
+        // Given
+        Customer update = new Customer(1, "Baki", "new@gmail.com", 34);
+
+        // When
+        underTest.updateCustomer(update);
+        //Then
+        assertThat(underTest.selectCustomerById(1)).hasValue(update);
+        assertThat(underTest.existsCustomerWithEmail("new@gmail.com")).isTrue();
+        assertThat(underTest.existsCustomerWithEmail("baki@gmail.com")).isFalse();
+    }
+
+    @Test
+    void updateCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        Customer update = new Customer(1, "Baki", "maki@gmail.com", 34);
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.updateCustomer(update))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+        assertThat(underTest.selectCustomerById(1))
+                .hasValueSatisfying(c -> assertThat(c.getEmail()).isEqualTo("baki@gmail.com"));
+    }
+
+    @Test
+    void deleteCustomerById() {
+        // When
+        underTest.deleteCustomerById(1);
+        //Then
+        assertThat(underTest.selectCustomerById(1)).isEmpty();
+        assertThat(underTest.existsCustomerWithEmail("baki@gmail.com")).isFalse();
+        assertThat(underTest.selectAllCustomers()).extracting(Customer::getId).containsExactly(2);
+    }
+
+    @Test
+    void concurrentInsertsKeepEmailsUnique() throws Exception {
+        // Given
+        int threads = 8;
+        int emails = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(() -> {
+                int inserted = 0;
+                for (int i = 0; i < emails; i++) {
+                    try {
+                        underTest.insertCustomer(new Customer("test", "test-" + i + "@test.com", 20));
+                        inserted++;
+                    } catch (DuplicateResourceException e) {
+                        // another thread won the race for this email
+                    }
+                }
+                return inserted;
+            });
+        }
+
+        // When
+        int inserted = 0;
+        for (Future<Integer> future : executor.invokeAll(tasks)) {
+            inserted += future.get();
+        }
+        executor.shutdown();
+        //Then
+        assertThat(inserted).isEqualTo(emails);
+        assertThat(underTest.selectAllCustomers()).hasSize(emails + 2);
+    }
+
+    @Test
+    void patchCustomer() {
+        // Given
+        Customer customer = new Customer("test", "test@test.com", 20);
+        underTest.insertCustomer(customer);
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(
+                customer.getId(),
+                new CustomerUpdateRequest(null, "new@test.com", null),
+                null
+        );
+
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.updated(20));
+        assertThat(underTest.selectCustomerById(customer.getId()))
+                .hasValue(new Customer(customer.getId(), "test", "new@test.com", 20));
+        assertThat(underTest.existsCustomerWithEmail("test@test.com")).isFalse();
+    }
+
+    @Test
+    void patchCustomerTellsNotFoundNoChangesAndTakenEmailApart() {
+        // Given
+        Customer customer = new Customer("test", "test@test.com", 20);
+        underTest.insertCustomer(customer);
+
+        // When
+        //Then
+        assertThat(underTest.patchCustomer(0, new CustomerUpdateRequest("foo", null, null), null))
+                .isEqualTo(CustomerPatchResult.NOT_FOUND);
+        assertThat(underTest.patchCustomer(customer.getId(), new CustomerUpdateRequest("test", null, 20), null))
+                .isEqualTo(CustomerPatchResult.NO_CHANGES);
+        assertThatThrownBy(() -> underTest.patchCustomer(
+                customer.getId(),
+                new CustomerUpdateRequest(null, "baki@gmail.com", null),
+                null
+        ))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+    }
+
+    @Test
+    void selectCustomersByIds() {
+        // When
+        List<Customer> actual = underTest.selectCustomersByIds(List.of(2, 0, 1, 2));
+
+        //Then
+        assertThat(actual).extracting(Customer::getName).containsExactly("Maki", "Baki");
+    }
+}
@@ -0,0 +1,172 @@
+package com.akibazcode.customer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerListSnapshotCacheTest {
+
+    private CustomerListSnapshotCache underTest;
+    // builds run at once unless deferred
+    private final List<Runnable> rebuilds = new CopyOnWriteArrayList<>();
+    private volatile boolean deferRebuilds;
+    private final Executor executor = task -> {
+        if (deferRebuilds) {
+            rebuilds.add(task);
+        } else {
+            task.run();
+        }
+    };
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private CustomerService customerService;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerListSnapshotCache(
+                customerService,
+                objectMapper,
+                executor,
+                Duration.ofMinutes(10)
+        );
+    }
+
+    @Test
+    void snapshotIsBuiltOnceWhileNothingIsWritten() throws IOException {
+        // Given
+        List<Customer> customers = List.of(new Customer(1, "baki", "baki@test.com", 35));
+        when(customerService.getAllCustomers()).thenReturn(customers);
+        when(customerService.getCustomersVersion()).thenReturn(OptionalLong.of(7));
+
+        // When
+        CustomerListSnapshotCache.Snapshot first = underTest.get();
+        CustomerListSnapshotCache.Snapshot second = underTest.get();
+
+        //Then
+        verify(customerService, times(1)).getAllCustomers();
+        assertThat(second).isSameAs(first);
+        assertThat(first.version()).hasValue(7);
+        assertThat(first.json()).isEqualTo(objectMapper.writeValueAsBytes(customers));
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(first.gzip()))) {
+            assertThat(gzip.readAllBytes()).isEqualTo(first.json());
+        }
+    }
+
+    @Test
+    void writeThroughServiceIsVisibleToNextRead() {
+        // Given
+        when(customerService.getAllCustomers())
+                .thenReturn(List.of(new Customer(1, "baki", "baki@test.com", 35)))
+                .thenReturn(List.of());
+        underTest.get();
+        when(customerService.getWriteCount()).thenReturn(1L);
+
+        // When
+        CustomerListSnapshotCache.Snapshot actual = underTest.get();
+
+        //Then
+        assertThat(actual.writes()).isEqualTo(1);
+        assertThat(new String(actual.json())).isEqualTo("[]");
+    }
+
+    @Test
+    void readersAfterAWriteShareOneBuild() throws Exception {
+        // Given
+        when(customerService.getAllCustomers()).thenReturn(List.of());
+        underTest.get();
+        when(customerService.getWriteCount()).thenReturn(1L);
+        deferRebuilds = true;
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+
+        try {
+            // When
+            Future<CustomerListSnapshotCache.Snapshot> first = readers.submit(underTest::get);
+            Future<CustomerListSnapshotCache.Snapshot> second = readers.submit(underTest::get);
+            while (rebuilds.isEmpty()) {
+                Thread.sleep(10);
+            }
+            rebuilds.get(0).run();
+
+            //Then
+            assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(second.get(5, TimeUnit.SECONDS));
+            assertThat(first.get().writes()).isEqualTo(1);
+            assertThat(rebuilds).hasSize(1);
+            verify(customerService, times(2)).getAllCustomers();
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    @Test
+    void expiredSnapshotIsServedWhileOneRebuildRuns() {
+        // Given
+        underTest = new CustomerListSnapshotCache(customerService, objectMapper, executor, Duration.ZERO);
+        when(customerService.getAllCustomers())
+                .thenReturn(List.of(new Customer(1, "baki", "baki@test.com", 35)))
+                .thenReturn(List.of());
+        CustomerListSnapshotCache.Snapshot stale = underTest.get();
+        deferRebuilds = true;
+
+        // When
+        CustomerListSnapshotCache.Snapshot first = underTest.get();
+        CustomerListSnapshotCache.Snapshot second = underTest.get();
+        rebuilds.forEach(Runnable::run);
+
+        //Then
+        assertThat(first).isSameAs(stale);
+        assertThat(second).isSameAs(stale);
+        assertThat(rebuilds).hasSize(1);
+        assertThat(new String(underTest.get().json())).isEqualTo("[]");
+    }
+
+    @Test
+    void customerAddedThroughServiceIsInNextList() throws IOException {
+        // Given
+        CustomerDao customerDao = new CustomerListDataAccessService();
+        CustomerService service = new CustomerService(
+                customerDao,
+                new CustomerSuggestIndex(customerDao),
+                new CustomerStatistics(customerDao)
+        );
+        underTest = new CustomerListSnapshotCache(service, objectMapper, executor, Duration.ofMinutes(10));
+        underTest.get();
+
+        // When
+        service.addCustomer(new CustomerRegistrationRequest("saki", "saki@test.com", 31));
+        Customer[] actual = objectMapper.readValue(underTest.get().json(), Customer[].class);
+
+        //Then
+        assertThat(actual).extracting(Customer::getEmail).contains("saki@test.com");
+    }
+
+    @Test
+    void acceptsGzip() {
+        assertThat(CustomerListSnapshotCache.acceptsGzip(null)).isFalse();
+        assertThat(CustomerListSnapshotCache.acceptsGzip("gzip, deflate, br")).isTrue();
+        assertThat(CustomerListSnapshotCache.acceptsGzip("br;q=1.0, *;q=0.5")).isTrue();
+        assertThat(CustomerListSnapshotCache.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(CustomerListSnapshotCache.acceptsGzip("identity")).isFalse();
+    }
+}
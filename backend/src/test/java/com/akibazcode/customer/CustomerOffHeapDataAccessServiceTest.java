@@ -0,0 +1,223 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerOffHeapDataAccessServiceTest {
+
+    private CustomerOffHeapDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerOffHeapDataAccessService(2, 0.5);
+    }
+
+    @Test
+    void insertCustomer() {
+        // Given
+        Customer customer = new Customer("Bäki", "baki@test.com", 35);
+
+        // When
+        underTest.insertCustomer(customer);
+        //Then
+        assertThat(customer.getId()).isEqualTo(1);
+        assertThat(underTest.selectCustomerById(1)).hasValue(customer);
+        assertThat(underTest.existsCustomerWithId(1)).isTrue();
+        assertThat(underTest.existsCustomerWithEmail("baki@test.com")).isTrue();
+        assertThat(underTest.existsCustomerWithEmail("maki@test.com")).isFalse();
+    }
+
+    @Test
+    void insertCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        Customer customer = new Customer("maki", "baki@test.com", 33);
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.insertCustomer(customer))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+        assertThat(customer.getId()).isNull();
+    }
+
+    @Test
+    void insertCustomersGrowsStorage() {
+        // Given
+        List<Customer> customers = IntStream.range(0, 10_000)
+                .mapToObj(i -> new Customer("customer " + i, "customer-" + i + "@test.com", i % 100))
+                .toList();
+
+        // When
+        underTest.insertCustomers(customers);
+        //Then
+        assertThat(underTest.selectAllCustomers()).isEqualTo(customers);
+        assertThat(underTest.selectCustomerById(5_000)).hasValue(customers.get(4_999));
+        assertThat(underTest.existsCustomerWithEmail("customer-9999@test.com")).isTrue();
+    }
+
+    @Test
+    void selectCustomersAfterIdSkipsDeletedCustomers() {
+        // Given
+        IntStream.rangeClosed(1, 5).forEach(i ->
+                underTest.insertCustomer(new Customer("customer " + i, "customer-" + i + "@test.com", 20)));
+        underTest.deleteCustomerById(3);
+
+        // When
+        List<Customer> actual = underTest.selectCustomersAfterId(1, 2);
+        //Then
+        assertThat(actual).extracting(Customer::getId).containsExactly(2, 4);
+    }
+
+    @Test
+    void forEachCustomer() {
+        // Given
+        IntStream.rangeClosed(1, 2_500).forEach(i ->
+                underTest.insertCustomer(new Customer("customer " + i, "customer-" + i + "@test.com", 20)));
+        List<Customer> actual = new ArrayList<>();
+
+        // When
+        underTest.forEachCustomer(actual::add);
+        //Then
+        assertThat(actual).isEqualTo(underTest.selectAllCustomers());
+    }
+
+    @Test
+    void deleteCustomerById() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+
+        // When
+        underTest.deleteCustomerById(1);
+        //Then
+        assertThat(underTest.selectCustomerById(1)).isEmpty();
+        assertThat(underTest.existsCustomerWithEmail("baki@test.com")).isFalse();
+        assertThat(underTest.selectAllCustomers()).isEmpty();
+    }
+
+    @Test
+    void updateCustomer() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        Customer update = new Customer(1, "maki", "maki@test.com", 33);
+
+        // When
+        underTest.updateCustomer(update);
+        //Then
+        assertThat(underTest.selectCustomerById(1)).hasValue(update);
+        assertThat(underTest.existsCustomerWithEmail("maki@test.com")).isTrue();
+        assertThat(underTest.existsCustomerWithEmail("baki@test.com")).isFalse();
+    }
+
+    @Test
+    void patchCustomer() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        underTest.insertCustomer(new Customer("maki", "maki@test.com", 33));
+
+        // When
+        CustomerPatchResult actual = underTest.patchCustomer(1, new CustomerUpdateRequest(null, "baki@new.com", 36), null);
+
+        //Then
+        assertThat(actual).isEqualTo(CustomerPatchResult.updated(35));
+        assertThat(underTest.selectCustomerById(1)).hasValue(new Customer(1, "baki", "baki@new.com", 36));
+        assertThat(underTest.existsCustomerWithEmail("baki@test.com")).isFalse();
+    }
+
+    @Test
+    void patchCustomerTellsNotFoundNoChangesTakenEmailAndVersionApart() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        underTest.insertCustomer(new Customer("maki", "maki@test.com", 33));
+
+        // When
+        //Then
+        assertThat(underTest.patchCustomer(3, new CustomerUpdateRequest("foo", null, null), null))
+                .isEqualTo(CustomerPatchResult.NOT_FOUND);
+        assertThat(underTest.patchCustomer(1, new CustomerUpdateRequest("baki", null, 35), null))
+                .isEqualTo(CustomerPatchResult.NO_CHANGES);
+        assertThatThrownBy(() -> underTest.patchCustomer(2, new CustomerUpdateRequest(null, "baki@test.com", null), null))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+        // versions are not tracked, so none can match
+        assertThatThrownBy(() -> underTest.patchCustomer(2, new CustomerUpdateRequest("foo", null, null), 0L))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThat(underTest.selectCustomerById(2)).hasValue(new Customer(2, "maki", "maki@test.com", 33));
+    }
+
+    @Test
+    void replacedStringsAndDeletedRowsAreCompacted() {
+        // Given
+        String longName = "x".repeat(2_000);
+        IntStream.rangeClosed(1, 5).forEach(i ->
+                underTest.insertCustomer(new Customer("customer " + i, "customer-" + i + "@test.com", 20 + i)));
+        underTest.deleteCustomerById(2);
+
+        // When
+        // every update leaves the previous name behind, 5MB in all without compaction
+        for (int i = 0; i < 2_500; i++) {
+            underTest.updateCustomer(new Customer(3, longName + i % 10, "customer-3@test.com", 23));
+        }
+        //Then
+        assertThat(underTest.usedBytes())
+                .isLessThan(2 * CustomerOffHeapDataAccessService.MIN_COMPACTION_GARBAGE + 10_000);
+        assertThat(underTest.selectAllCustomers()).extracting(Customer::getId).containsExactly(1, 3, 4, 5);
+        assertThat(underTest.selectCustomerById(3))
+                .hasValue(new Customer(3, longName + 9, "customer-3@test.com", 23));
+        assertThat(underTest.selectCustomersAfterId(1, 2)).extracting(Customer::getId).containsExactly(3, 4);
+        assertThat(underTest.existsCustomerWithEmail("customer-2@test.com")).isFalse();
+        assertThat(underTest.existsCustomerWithEmail("customer-5@test.com")).isTrue();
+    }
+
+    @Test
+    void compactKeepsLiveCustomersOnly() {
+        // Given
+        IntStream.rangeClosed(1, 5).forEach(i ->
+                underTest.insertCustomer(new Customer("customer " + i, "customer-" + i + "@test.com", 20 + i)));
+        underTest.deleteCustomerById(1);
+        underTest.updateCustomer(new Customer(4, "maki", "maki@test.com", 33));
+        List<Customer> before = underTest.selectAllCustomers();
+        long usedBefore = underTest.usedBytes();
+        long garbageBefore = underTest.garbageBytes();
+
+        // When
+        underTest.compact();
+        //Then
+        // the deleted row, its strings and the replaced strings of customer 4
+        assertThat(garbageBefore).isEqualTo(16 + 2 * ("customer 1customer-1@test.com".length() + 8));
+        assertThat(underTest.garbageBytes()).isZero();
+        assertThat(underTest.usedBytes()).isEqualTo(usedBefore - garbageBefore);
+        assertThat(underTest.selectAllCustomers()).isEqualTo(before);
+        assertThat(underTest.existsCustomerWithEmail("customer-4@test.com")).isFalse();
+        assertThat(underTest.existsCustomerWithEmail("maki@test.com")).isTrue();
+        Customer customer = new Customer("baki", "baki@test.com", 35);
+        underTest.insertCustomer(customer);
+        assertThat(customer.getId()).isEqualTo(6);
+        assertThat(underTest.selectCustomerById(6)).hasValue(customer);
+    }
+
+    @Test
+    void updateCustomerThrowsExceptionWhenEmailAlreadyTaken() {
+        // Given
+        underTest.insertCustomer(new Customer("baki", "baki@test.com", 35));
+        underTest.insertCustomer(new Customer("maki", "maki@test.com", 33));
+        Customer update = new Customer(1, "baki", "maki@test.com", 35);
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.updateCustomer(update))
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email already taken.");
+        assertThat(underTest.selectCustomerById(1))
+                .hasValueSatisfying(c -> assertThat(c.getEmail()).isEqualTo("baki@test.com"));
+    }
+}
@@ -0,0 +1,352 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.AbstractTestcontainers;
+import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerR2dbcDataAccessServiceTest extends AbstractTestcontainers {
+
+    private CustomerR2dbcDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseClient databaseClient = DatabaseClient.create(ConnectionFactories.get(
+                ConnectionFactoryOptions.builder()
+                        .option(ConnectionFactoryOptions.DRIVER, "postgresql")
+                        .option(ConnectionFactoryOptions.HOST, postgreSQLContainer.getHost())
+                        .option(ConnectionFactoryOptions.PORT, postgreSQLContainer.getFirstMappedPort())
+                        .option(ConnectionFactoryOptions.DATABASE, postgreSQLContainer.getDatabaseName())
+                        .option(ConnectionFactoryOptions.USER, postgreSQLContainer.getUsername())
+                        .option(ConnectionFactoryOptions.PASSWORD, postgreSQLContainer.getPassword())
+                        .build()
+        ));
+        underTest = new CustomerR2dbcDataAccessService(databaseClient);
+    }
+
+    @Test
+    void selectAllCustomers() {
+        // Given
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+        underTest.insertCustomer(customer).block();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.selectAllCustomers().filter(c -> c.getId().equals(customer.getId())))
+                .expectNext(customer)
+                .verifyComplete();
+    }
+
+    @Test
+    void selectCustomersAfterId() {
+        // Given
+        Customer first = newCustomer();
+        Customer second = newCustomer();
+        underTest.insertCustomer(first).block();
+        underTest.insertCustomer(second).block();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.selectCustomersAfterId(first.getId(), 1))
+                .expectNext(second)
+                .verifyComplete();
+    }
+
+    @Test
+    void selectCustomerById() {
+        // Given
+        Customer customer = newCustomer();
+        underTest.insertCustomer(customer).block();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.selectCustomerById(customer.getId()))
+                .expectNext(customer)
+                .verifyComplete();
+    }
+
+    @Test
+    void selectCustomersByIds() {
+        // Given
+        Customer first = newCustomer();
+        Customer second = newCustomer();
+        underTest.insertCustomer(first).block();
+        underTest.insertCustomer(second).block();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.selectCustomersByIds(List.of(first.getId(), second.getId(), 0)).collectList())
+                .assertNext(customers -> assertThat(customers).containsExactlyInAnyOrder(first, second))
+                .verifyComplete();
+    }
+
+    @Test
+    void willReturnEmptyWhenSelectCustomerById() {
+        // Given
+        int id = 0;
+
+        // When
+        //Then
+        StepVerifier.create(underTest.selectCustomerById(id))
+                .verifyComplete();
+    }
+
+    @Test
+    void insertCustomerSetsGeneratedId() {
+        // Given
+        Customer customer = newCustomer();
+
+        // When
+        Customer actual = underTest.insertCustomer(customer).block();
+
+        //Then
+        assertThat(actual).isNotNull();
+        assertThat(actual.getId()).isNotNull();
+    }
+
+    @Test
+    void insertCustomerEmitsErrorWhenEmailAlreadyTaken() {
+        // Given
+        Customer existing = newCustomer();
+        underTest.insertCustomer(existing).block();
+        Customer customer = new Customer(
+                FAKER.name().fullName(),
+                existing.getEmail(),
+                30
+        );
+
+        // When
+        //Then
+        StepVerifier.create(underTest.insertCustomer(customer))
+                .expectErrorSatisfies(e -> assertThat(e)
+                        .isInstanceOf(DuplicateResourceException.class)
+                        .hasMessage("Email already taken."))
+                .verify();
+        assertThat(customer.getId()).isNull();
+    }
+
+    @Test
+    void existsCustomerWithEmail() {
+        // Given
+        Customer customer = newCustomer();
+        underTest.insertCustomer(customer).block();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.existsCustomerWithEmail(customer.getEmail()))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void existsCustomerWithIdWillReturnFalseWhenIdNotPresent() {
+        // Given
+        int id = 0;
+
+        // When
+        //Then
+        StepVerifier.create(underTest.existsCustomerWithId(id))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void deleteCustomerById() {
+        // Given
+        Customer customer = newCustomer();
+        underTest.insertCustomer(customer).block();
+
+        // When
+        underTest.deleteCustomerById(customer.getId()).block();
+
+        //Then
+        StepVerifier.create(underTest.selectCustomerById(customer.getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void updateCustomer() {
+        // Given
+        Customer customer = newCustomer();
+        underTest.insertCustomer(customer).block();
+        Customer update = new Customer(
+                customer.getId(),
+                "foo",
+                customer.getEmail(),
+                11
+        );
+
+        // When
+        underTest.updateCustomer(update).block();
+
+        //Then
+        StepVerifier.create(underTest.selectCustomerById(customer.getId()))
+                .expectNext(update)
+                .verifyComplete();
+    }
+
+    @Test
+    void updateCustomerEmitsErrorWhenEmailAlreadyTaken() {
+        // Given
+        Customer existing = newCustomer();
+        Customer customer = newCustomer();
+        underTest.insertCustomer(existing).block();
+        underTest.insertCustomer(customer).block();
+        Customer update = new Customer(
+                customer.getId(),
+                customer.getName(),
+                existing.getEmail(),
+                customer.getAge()
+        );
+
+        // When
+        //Then
+        StepVerifier.create(underTest.updateCustomer(update))
+                .expectError(DuplicateResourceException.class)
+                .verify();
+    }
+
+    @Test
+    void searchCustomers() {
+        // Given
+        Customer customer = newCustomer();
+        underTest.insertCustomer(customer).block();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.searchCustomers(
+                        new CustomerSearchRequest(customer.getName().substring(0, 2).toUpperCase(),
+                                customer.getEmail(), 20, 20), 10))
+                .expectNext(customer)
+                .verifyComplete();
+    }
+
+    @Test
+    void countCustomersByAge() {
+        // Given
+        Customer customer = newCustomer();
+        customer.setAge(137);
+        underTest.insertCustomer(customer).block();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.countCustomersByAge())
+                .assertNext(customersByAge -> assertThat(customersByAge).containsKey(137))
+                .verifyComplete();
+    }
+
+    @Test
+    void patchCustomerReportsPreviousAgeAndBumpsVersion() {
+        // Given
+        Customer customer = newCustomer();
+        underTest.insertCustomer(customer).block();
+        Long version = underTest.selectCustomerById(customer.getId()).block().getVersion();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.patchCustomer(
+                        customer.getId(), new CustomerUpdateRequest("foo", null, 11), version))
+                .expectNext(CustomerPatchResult.updated(20))
+                .verifyComplete();
+        StepVerifier.create(underTest.selectCustomerById(customer.getId()))
+                .assertNext(actual -> {
+                    assertThat(actual.getName()).isEqualTo("foo");
+                    assertThat(actual.getAge()).isEqualTo(11);
+                    assertThat(actual.getVersion()).isEqualTo(version + 1);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void patchCustomerTellsMissingUnchangedAndModifiedCustomersApart() {
+        // Given
+        Customer customer = newCustomer();
+        underTest.insertCustomer(customer).block();
+        CustomerUpdateRequest unchanged = new CustomerUpdateRequest(customer.getName(), null, null);
+
+        // When
+        //Then
+        StepVerifier.create(underTest.patchCustomer(0, unchanged, null))
+                .expectNext(CustomerPatchResult.NOT_FOUND)
+                .verifyComplete();
+        StepVerifier.create(underTest.patchCustomer(customer.getId(), unchanged, null))
+                .expectNext(CustomerPatchResult.NO_CHANGES)
+                .verifyComplete();
+        StepVerifier.create(underTest.patchCustomer(
+                        customer.getId(), new CustomerUpdateRequest("foo", null, null), 42L))
+                .expectError(PreconditionFailedException.class)
+                .verify();
+    }
+
+    @Test
+    void patchCustomerEmitsErrorWhenEmailAlreadyTaken() {
+        // Given
+        Customer existing = newCustomer();
+        Customer customer = newCustomer();
+        underTest.insertCustomer(existing).block();
+        underTest.insertCustomer(customer).block();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.patchCustomer(
+                        customer.getId(), new CustomerUpdateRequest(null, existing.getEmail(), null), null))
+                .expectError(DuplicateResourceException.class)
+                .verify();
+    }
+
+    @Test
+    void deleteCustomerByIdWithVersion() {
+        // Given
+        Customer customer = newCustomer();
+        underTest.insertCustomer(customer).block();
+        Long version = underTest.selectCustomerById(customer.getId()).block().getVersion();
+
+        // When
+        //Then
+        StepVerifier.create(underTest.deleteCustomerById(customer.getId(), version + 1))
+                .expectError(PreconditionFailedException.class)
+                .verify();
+        StepVerifier.create(underTest.deleteCustomerById(customer.getId(), version))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(underTest.deleteCustomerById(customer.getId(), version))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void selectCustomersVersionMovesOnWrites() {
+        // Given
+        Long before = underTest.selectCustomersVersion().block();
+
+        // When
+        underTest.insertCustomer(newCustomer()).block();
+
+        //Then
+        StepVerifier.create(underTest.selectCustomersVersion())
+                .assertNext(after -> assertThat(after).isGreaterThan(before))
+                .verifyComplete();
+    }
+
+    private static Customer newCustomer() {
+        return new Customer(
+                FAKER.name().fullName(),
+                FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID(),
+                20
+        );
+    }
+}
@@ -7,7 +7,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.Sort;
 
+import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -87,4 +89,20 @@ class CustomerRepositoryTest extends AbstractTestcontainers {
         //Then
         assertThat(actual).isFalse();
     }
-}
\ No newline at end of file
+
+    @Test
+    void findByMatchesSearch() {
+        // Given
+        underTest.save(new Customer("Baki", "baki-" + UUID.randomUUID() + "@test.com", 35));
+        underTest.save(new Customer("bakir", "bakir-" + UUID.randomUUID() + "@test.com", 45));
+        underTest.save(new Customer("maki", "maki-" + UUID.randomUUID() + "@test.com", 35));
+
+        // When
+        List<Customer> actual = underTest.findBy(
+                CustomerRepository.matches(new CustomerSearchRequest("bak", null, 30, 40)),
+                query -> query.sortBy(Sort.by("id")).all()
+        );
+        //Then
+        assertThat(actual).extracting(Customer::getName).containsExactly("Baki");
+    }
+}
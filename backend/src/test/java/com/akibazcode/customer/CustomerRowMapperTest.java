@@ -36,9 +36,11 @@ class CustomerRowMapperTest {
         when(rs.getString("name")).thenReturn("Test");
         when(rs.getString("email")).thenReturn("test@test.com");
         when(rs.getInt("age")).thenReturn(35);
+        when(rs.getLong("version")).thenReturn(3L);
         // When
         Customer actual = underTest.mapRow(rs, 1);
         //Then
         assertThat(actual).isEqualTo(customer);
+        assertThat(actual.getVersion()).isEqualTo(3L);
     }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.AbstractTestcontainers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs every combination of search filters through the jdbc dao and checks with EXPLAIN that postgres
+// answers it from the index of its most selective filter: the unique email, then the name prefix, then the age
+// range. The table is large enough for a sequential scan to be the cheaper plan whenever no index applies.
+class CustomerSearchQueryPlanTest extends AbstractTestcontainers {
+    private static final int CUSTOMERS = 50_000;
+    // see V2__Add_Unique_Constraint_To_Customer_Email.sql and V5__Add_Customer_Search_Indexes.sql
+    private static final String EMAIL_INDEX = "customer_email_unique";
+    private static final String NAME_INDEX = "customer_name_lower_pattern_idx";
+    private static final String AGE_INDEX = "customer_age_idx";
+
+    private CustomerJDBCDataAccessService underTest;
+    private final List<String> plans = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = getJDBCTemplate();
+        jdbcTemplate.update("DELETE FROM customer");
+        // random names, ages ascending with the id like customers who registered over the years
+        jdbcTemplate.update("""
+                INSERT INTO customer (name, email, age)
+                SELECT md5(i::text), 'search-' || i || '@test.com', 18 + i * 80 / (? + 1)
+                FROM generate_series(1, ?) AS i
+                """, CUSTOMERS, CUSTOMERS);
+        jdbcTemplate.execute("ANALYZE customer");
+
+        JdbcTemplate explainTemplate = getJDBCTemplate();
+        underTest = new CustomerJDBCDataAccessService(
+                new JdbcTemplate(jdbcTemplate.getDataSource()) {
+                    @Override
+                    public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+                        plans.add(String.join("\n", explainTemplate.queryForList("EXPLAIN " + sql, String.class, args)));
+                        return super.query(sql, rowMapper, args);
+                    }
+                },
+                new CustomerRowMapper()
+        );
+    }
+
+    @Test
+    void everyFilterCombinationUsesAnIndex() {
+        // Given
+        String namePrefix = getJDBCTemplate().queryForObject(
+                "SELECT substring(name, 1, 4) FROM customer ORDER BY id LIMIT 1", String.class);
+        String email = "search-%s@test.com".formatted(CUSTOMERS / 2);
+
+        // every non-empty subset of the four filters
+        for (int filters = 1; filters < 16; filters++) {
+            CustomerSearchRequest search = new CustomerSearchRequest(
+                    (filters & 1) != 0 ? namePrefix.toUpperCase() : null,
+                    (filters & 2) != 0 ? email : null,
+                    (filters & 4) != 0 ? 97 : null,
+                    (filters & 8) != 0 ? ((filters & 4) != 0 ? 97 : 18) : null
+            );
+            String index = search.email() != null ? EMAIL_INDEX
+                    : search.namePrefix() != null ? NAME_INDEX
+                    : AGE_INDEX;
+            plans.clear();
+
+            // When
+            List<Customer> actual = underTest.searchCustomers(search, 100);
+
+            //Then
+            assertThat(plans).hasSize(1);
+            assertThat(plans.get(0))
+                    .as("plan for %s", search)
+                    .doesNotContain("Seq Scan")
+                    .contains(index);
+            assertThat(actual).allMatch(search::matches);
+        }
+    }
+
+    @Test
+    void namePrefixIsCaseInsensitiveAndEscapesWildcards() {
+        // Given
+        String namePrefix = getJDBCTemplate().queryForObject(
+                "SELECT substring(name, 1, 3) FROM customer ORDER BY id LIMIT 1", String.class);
+
+        // When
+        List<Customer> matches = underTest.searchCustomers(
+                new CustomerSearchRequest(namePrefix.toUpperCase(), null, null, null), 1000);
+        List<Customer> wildcards = underTest.searchCustomers(
+                new CustomerSearchRequest("%", null, null, null), 1000);
+
+        //Then
+        assertThat(matches).isNotEmpty().allMatch(customer -> customer.getName().startsWith(namePrefix));
+        assertThat(matches).isSortedAccordingTo((a, b) -> a.getId().compareTo(b.getId()));
+        assertThat(wildcards).isEmpty();
+    }
+}
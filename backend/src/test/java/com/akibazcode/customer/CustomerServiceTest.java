@@ -1,6 +1,7 @@
 package com.akibazcode.customer;
 
 import com.akibazcode.exception.DuplicateResourceException;
+import com.akibazcode.exception.PreconditionFailedException;
 import com.akibazcode.exception.RequestValidationException;
 import com.akibazcode.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,7 +11,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -25,9 +31,14 @@ class CustomerServiceTest {
     @Mock
     private CustomerDao customerDao;
 
+    private CustomerSuggestIndex customerSuggestIndex;
+    private CustomerStatistics customerStatistics;
+
     @BeforeEach
     void setUp() {
-        underTest = new CustomerService(customerDao);
+        customerSuggestIndex = new CustomerSuggestIndex(customerDao);
+        customerStatistics = new CustomerStatistics(customerDao);
+        underTest = new CustomerService(customerDao, customerSuggestIndex, customerStatistics);
     }
 
     @Test
@@ -38,6 +49,125 @@ class CustomerServiceTest {
         verify(customerDao).selectAllCustomers();
     }
 
+    @Test
+    void getCustomersPage() {
+        // Given
+        int limit = 2;
+        List<Customer> customers = List.of(
+                new Customer(4, "baki", "baki@test.com", 35),
+                new Customer(5, "maki", "maki@test.com", 33),
+                new Customer(6, "saki", "saki@test.com", 31)
+        );
+        when(customerDao.selectCustomersAfterId(3, limit + 1)).thenReturn(customers);
+
+        // When
+        CustomerPage actual = underTest.getCustomersPage(CustomerService.encodeCursor(3), limit);
+        //Then
+        assertThat(actual.customers()).containsExactly(customers.get(0), customers.get(1));
+        assertThat(CustomerService.decodeCursor(actual.nextCursor())).isEqualTo(5);
+    }
+
+    @Test
+    void getCustomersPageReturnsNoCursorOnLastPage() {
+        // Given
+        int limit = 2;
+        List<Customer> customers = List.of(
+                new Customer(1, "baki", "baki@test.com", 35)
+        );
+        when(customerDao.selectCustomersAfterId(0, limit + 1)).thenReturn(customers);
+
+        // When
+        CustomerPage actual = underTest.getCustomersPage(null, limit);
+        //Then
+        assertThat(actual.customers()).isEqualTo(customers);
+        assertThat(actual.nextCursor()).isNull();
+    }
+
+    @Test
+    void getCustomersPageThrowsExceptionWhenLimitOutOfBounds() {
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.getCustomersPage(null, CustomerService.MAX_PAGE_SIZE + 1))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Page limit must be between 1 and %s.".formatted(CustomerService.MAX_PAGE_SIZE));
+        verify(customerDao, never()).selectCustomersAfterId(anyInt(), anyInt());
+    }
+
+    @Test
+    void getCustomersPageThrowsExceptionWhenCursorIsInvalid() {
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.getCustomersPage("not a cursor", 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Invalid page cursor.");
+    }
+
+    @Test
+    void searchCustomers() {
+        // Given
+        CustomerSearchRequest search = new CustomerSearchRequest("ba", null, 30, 40);
+        List<Customer> customers = List.of(new Customer(1, "baki", "baki@test.com", 35));
+        when(customerDao.searchCustomers(search, 10)).thenReturn(customers);
+
+        // When
+        List<Customer> actual = underTest.searchCustomers(search, 10);
+        //Then
+        assertThat(actual).isEqualTo(customers);
+    }
+
+    @Test
+    void searchCustomersThrowsExceptionWhenAgeRangeIsEmpty() {
+        // Given
+        CustomerSearchRequest search = new CustomerSearchRequest(null, null, 40, 30);
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.searchCustomers(search, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Minimum age must not be greater than maximum age.");
+        verify(customerDao, never()).searchCustomers(any(), anyInt());
+    }
+
+    @Test
+    void suggestCustomersFindsAddedCustomer() {
+        // Given
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                "Baki Akiba",
+                "baki@test.com",
+                35
+        );
+        doAnswer(invocation -> {
+            invocation.<Customer>getArgument(0).setId(7);
+            return null;
+        }).when(customerDao).insertCustomer(any());
+        underTest.addCustomer(request);
+
+        // When
+        List<CustomerSuggestion> actual = underTest.suggestCustomers("aki", 10);
+        //Then
+        assertThat(actual).containsExactly(new CustomerSuggestion(7, "Baki Akiba", "baki@test.com"));
+    }
+
+    @Test
+    void suggestCustomersThrowsExceptionWhenLimitOutOfBounds() {
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.suggestCustomers("baki", 101))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Suggest limit must be between 1 and 100.");
+    }
+
+    @Test
+    void exportCustomers() {
+        // Given
+        Consumer<Customer> action = customer -> {
+        };
+        // When
+        underTest.exportCustomers(action);
+        //Then
+        verify(customerDao).forEachCustomer(action);
+    }
+
     @Test
     void getCustomerById() {
         // Given
@@ -70,6 +200,36 @@ class CustomerServiceTest {
                 .hasMessage("Customer with id: [%s] not found.".formatted(id));
     }
 
+    @Test
+    void getCustomersByIdsKeepsRequestedOrderAndReportsMissingIds() {
+        // Given
+        Customer baki = new Customer(1, "baki", "baki@test.com", 35);
+        Customer maki = new Customer(2, "maki", "maki@test.com", 33);
+        when(customerDao.selectCustomersByIds(Set.of(2, 3, 1))).thenReturn(List.of(baki, maki));
+
+        // When
+        CustomerMultiGetResponse actual = underTest.getCustomersByIds(List.of(2, 3, 1, 2));
+
+        //Then
+        assertThat(actual.customers()).containsExactly(maki, baki);
+        assertThat(actual.missingIds()).containsExactly(3);
+    }
+
+    @Test
+    void getCustomersByIdsThrowsExceptionWhenNumberOfIdsOutOfBounds() {
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.getCustomersByIds(List.of()))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Number of ids must be between 1 and %s.".formatted(CustomerService.MAX_BATCH_SIZE));
+        assertThatThrownBy(() -> underTest.getCustomersByIds(Collections.nCopies(CustomerService.MAX_BATCH_SIZE + 1, 1)))
+                .isInstanceOf(RequestValidationException.class);
+        assertThatThrownBy(() -> underTest.getCustomersByIds(Arrays.asList(1, null)))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Customer ids must not be null.");
+        verify(customerDao, never()).selectCustomersByIds(any());
+    }
+
     @Test
     void addCustomer() {
         // Given
@@ -79,15 +239,21 @@ class CustomerServiceTest {
                 email,
                 35
         );
-        when(customerDao.existsCustomerWithEmail(email)).thenReturn(false);
+        doAnswer(invocation -> {
+            Customer customer = invocation.getArgument(0);
+            customer.setId(1);
+            return null;
+        }).when(customerDao).insertCustomer(any());
 
         // When
-        underTest.addCustomer(customerRegistrationRequest);
+        Integer id = underTest.addCustomer(customerRegistrationRequest);
         //Then
         ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
         verify(customerDao).insertCustomer(customerArgumentCaptor.capture());
+        verify(customerDao, never()).existsCustomerWithEmail(any());
         Customer actual = customerArgumentCaptor.getValue();
-        assertThat(actual.getId()).isNull();
+        assertThat(id).isEqualTo(1);
+        assertThat(actual.getId()).isEqualTo(id);
         assertThat(actual.getName()).isEqualTo(customerRegistrationRequest.name());
         assertThat(actual.getEmail()).isEqualTo(email);
         assertThat(actual.getAge()).isEqualTo(customerRegistrationRequest.age());
@@ -102,7 +268,8 @@ class CustomerServiceTest {
                 email,
                 35
         );
-        when(customerDao.existsCustomerWithEmail(email)).thenReturn(true);
+        doThrow(new DuplicateResourceException("Email already taken."))
+                .when(customerDao).insertCustomer(any());
 
 
         // When
@@ -110,26 +277,107 @@ class CustomerServiceTest {
                 .isInstanceOf(DuplicateResourceException.class)
                 .hasMessage("Email already taken.");
         //Then
-        verify(customerDao, never()).insertCustomer(any());
+        verify(customerDao, never()).existsCustomerWithEmail(any());
+    }
+
+    @Test
+    void addCustomers() {
+        // Given
+        List<CustomerRegistrationRequest> requests = List.of(
+                new CustomerRegistrationRequest("baki", "baki@test.com", 35),
+                new CustomerRegistrationRequest("maki", "maki@test.com", 33),
+                new CustomerRegistrationRequest("saki", "baki@test.com", 31),
+                new CustomerRegistrationRequest("taki", null, 30)
+        );
+        doAnswer(invocation -> {
+            List<Customer> customers = invocation.getArgument(0);
+            customers.get(0).setId(1);
+            return null;
+        }).when(customerDao).insertCustomers(anyList());
+
+        // When
+        List<CustomerBatchRegistrationResult> actual = underTest.addCustomers(requests);
+        //Then
+        ArgumentCaptor<List<Customer>> customersArgumentCaptor = ArgumentCaptor.forClass(List.class);
+        verify(customerDao).insertCustomers(customersArgumentCaptor.capture());
+        assertThat(customersArgumentCaptor.getValue())
+                .extracting(Customer::getEmail)
+                .containsExactly("baki@test.com", "maki@test.com");
+        assertThat(actual).containsExactly(
+                new CustomerBatchRegistrationResult("baki@test.com", 1, CustomerBatchRegistrationResult.Status.CREATED),
+                new CustomerBatchRegistrationResult("maki@test.com", null, CustomerBatchRegistrationResult.Status.DUPLICATE_EMAIL),
+                new CustomerBatchRegistrationResult("baki@test.com", null, CustomerBatchRegistrationResult.Status.DUPLICATE_EMAIL),
+                new CustomerBatchRegistrationResult(null, null, CustomerBatchRegistrationResult.Status.INVALID)
+        );
+    }
+
+    @Test
+    void addCustomersThrowsExceptionWhenBatchIsTooLarge() {
+        // Given
+        List<CustomerRegistrationRequest> requests = Collections.nCopies(
+                CustomerService.MAX_BATCH_SIZE + 1,
+                new CustomerRegistrationRequest("baki", "baki@test.com", 35)
+        );
+
+        // When
+        assertThatThrownBy(() -> underTest.addCustomers(requests))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Batch size must not exceed %s.".formatted(CustomerService.MAX_BATCH_SIZE));
+        //Then
+        verify(customerDao, never()).insertCustomers(any());
     }
 
     @Test
     void deleteCustomerById() {
         // Given
         int id = 1;
-        when(customerDao.existsCustomerWithId(id)).thenReturn(true);
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(new Customer(id, "baki", "baki@test.com", 35)));
+        when(customerDao.deleteCustomerById(id)).thenReturn(true);
+        customerStatistics.add(35);
 
         // When
         underTest.deleteCustomerById(id);
         //Then
         verify(customerDao).deleteCustomerById(id);
+        assertThat(underTest.getCustomerStats().count()).isZero();
+    }
+
+    @Test
+    void deleteCustomerByIdThrowsExceptionWhenConcurrentDeleteWon() {
+        // Given
+        int id = 1;
+        // both deletes read the customer, only the other one removes the row
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(new Customer(id, "baki", "baki@test.com", 35)));
+        when(customerDao.deleteCustomerById(id)).thenReturn(false);
+        customerStatistics.add(35);
+
+        // When
+        assertThatThrownBy(() -> underTest.deleteCustomerById(id))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("Customer with id: [%s] not found.".formatted(id));
+
+        //Then
+        assertThat(underTest.getCustomerStats().count()).isEqualTo(1);
+    }
+
+    @Test
+    void deleteCustomerByIdWithExpectedVersion() {
+        // Given
+        int id = 1;
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(new Customer(id, "baki", "baki@test.com", 35)));
+
+        // When
+        underTest.deleteCustomerById(id, 3L);
+        //Then
+        verify(customerDao).deleteCustomerById(id, 3L);
+        verify(customerDao, never()).deleteCustomerById(anyInt());
     }
 
     @Test
     void deleteCustomerByIdThrowsExceptionWhenCustomerDoesNotExist() {
         //Given
         int id = 1;
-        when(customerDao.existsCustomerWithId(id)).thenReturn(false);
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.empty());
 
         // When
         assertThatThrownBy(() -> underTest.deleteCustomerById(id))
@@ -141,131 +389,80 @@ class CustomerServiceTest {
     }
 
     @Test
-    void updateCustomerUpdatesAllProperties() {
+    void updateCustomerPatchesCustomer() {
         // Given
         int id = 1;
         CustomerUpdateRequest request = new CustomerUpdateRequest(
                 "Test",
-                "test",
-                1
-        );
-        Customer customer = new Customer(
-                1,
-                "Baki",
-                "baki@test.com",
-                35
+                "test@test.com",
+                null
         );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        when(customerDao.existsCustomerWithEmail(request.email())).thenReturn(false);
+        when(customerDao.patchCustomer(id, request, null)).thenReturn(CustomerPatchResult.updated(35));
         // When
         underTest.updateCustomer(id, request);
         //Then
-        verify(customerDao).selectCustomerById(id);
-        verify(customerDao).existsCustomerWithEmail(request.email());
-
-        ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
-        verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
-        Customer capturedCustomer = customerArgumentCaptor.getValue();
-
-        assertThat(capturedCustomer.getId()).isEqualTo(id);
-        assertThat(capturedCustomer.getName()).isEqualTo(request.name());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(request.email());
-        assertThat(capturedCustomer.getAge()).isEqualTo(request.age());
+        verify(customerDao).patchCustomer(id, request, null);
+        verify(customerDao, never()).selectCustomerById(any());
+        verify(customerDao, never()).existsCustomerWithEmail(any());
+        verify(customerDao, never()).updateCustomer(any());
     }
 
     @Test
-    void updateCustomerUpdatesOnlyNamePropertie() {
+    void updateCustomerMovesCustomerBetweenAgeBuckets() {
         // Given
         int id = 1;
         CustomerUpdateRequest request = new CustomerUpdateRequest(
-                "Test",
                 null,
-                null
-        );
-        Customer customer = new Customer(
-                1,
-                "Baki",
-                "baki@test.com",
-                35
+                null,
+                41
         );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
+        customerStatistics.add(35);
+        when(customerDao.patchCustomer(id, request, null)).thenReturn(CustomerPatchResult.updated(35));
         // When
         underTest.updateCustomer(id, request);
         //Then
-        verify(customerDao).selectCustomerById(id);
-
-        ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
-        verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
-        Customer capturedCustomer = customerArgumentCaptor.getValue();
-
-        assertThat(capturedCustomer.getId()).isEqualTo(id);
-        assertThat(capturedCustomer.getName()).isEqualTo(request.name());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(customer.getEmail());
-        assertThat(capturedCustomer.getAge()).isEqualTo(customer.getAge());
+        // the old age comes from the patch, not from a separate read
+        verify(customerDao, never()).selectCustomerById(any());
+        CustomerStats stats = underTest.getCustomerStats();
+        assertThat(stats.count()).isEqualTo(1);
+        assertThat(stats.minAge()).isEqualTo(41);
+        assertThat(stats.maxAge()).isEqualTo(41);
     }
 
     @Test
-    void updateCustomerUpdatesOnlyEmailPropertie() {
+    void updateCustomerThrowsExceptionWhenVersionDoesNotMatch() {
         // Given
         int id = 1;
         CustomerUpdateRequest request = new CustomerUpdateRequest(
+                "Test",
                 null,
-                "test@test.com",
                 null
         );
-        Customer customer = new Customer(
-                1,
-                "Baki",
-                "baki@test.com",
-                35
-        );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        when(customerDao.existsCustomerWithEmail(request.email())).thenReturn(false);
+        when(customerDao.patchCustomer(id, request, 3L)).thenThrow(new PreconditionFailedException(
+                "Customer with id: [%s] has been modified.".formatted(id)
+        ));
         // When
-        underTest.updateCustomer(id, request);
         //Then
-        verify(customerDao).selectCustomerById(id);
-        verify(customerDao).existsCustomerWithEmail(request.email());
-
-        ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
-        verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
-        Customer capturedCustomer = customerArgumentCaptor.getValue();
-
-        assertThat(capturedCustomer.getId()).isEqualTo(id);
-        assertThat(capturedCustomer.getName()).isEqualTo(customer.getName());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(request.email());
-        assertThat(capturedCustomer.getAge()).isEqualTo(customer.getAge());
+        assertThatThrownBy(() -> underTest.updateCustomer(id, request, 3L))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessage("Customer with id: [%s] has been modified.".formatted(id));
     }
 
     @Test
-    void updateCustomerUpdatesOnlyAgePropertie() {
+    void updateCustomerThrowsExceptionWhenCustomerDoesNotExist() {
         // Given
         int id = 1;
         CustomerUpdateRequest request = new CustomerUpdateRequest(
+                "Test",
                 null,
-                null,
-                1
-        );
-        Customer customer = new Customer(
-                1,
-                "Baki",
-                "baki@test.com",
-                35
+                null
         );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
+        when(customerDao.patchCustomer(id, request, null)).thenReturn(CustomerPatchResult.NOT_FOUND);
         // When
-        underTest.updateCustomer(id, request);
         //Then
-        verify(customerDao).selectCustomerById(id);
-
-        ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
-        verify(customerDao).updateCustomer(customerArgumentCaptor.capture());
-        Customer capturedCustomer = customerArgumentCaptor.getValue();
-
-        assertThat(capturedCustomer.getId()).isEqualTo(id);
-        assertThat(capturedCustomer.getName()).isEqualTo(customer.getName());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(customer.getEmail());
-        assertThat(capturedCustomer.getAge()).isEqualTo(request.age());
+        assertThatThrownBy(() -> underTest.updateCustomer(id, request))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("Customer with id: [%s] not found.".formatted(id));
     }
 
     @Test
@@ -277,22 +474,14 @@ class CustomerServiceTest {
                 "test@test.com",
                 1
         );
-        Customer customer = new Customer(
-                1,
-                "Baki",
-                "baki@test.com",
-                35
-        );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        when(customerDao.existsCustomerWithEmail(request.email())).thenReturn(true);
+        when(customerDao.patchCustomer(id, request, null)).thenThrow(new DuplicateResourceException(
+                "Email already taken."
+        ));
         // When
+        //Then
         assertThatThrownBy(() -> underTest.updateCustomer(id, request))
                 .isInstanceOf(DuplicateResourceException.class)
                 .hasMessage("Email already taken.");
-        //Then
-        verify(customerDao).selectCustomerById(id);
-
-        verify(customerDao, never()).updateCustomer(any());
     }
 
     @Test
@@ -304,20 +493,11 @@ class CustomerServiceTest {
                 "test@test.com",
                 1
         );
-        Customer customer = new Customer(
-                1,
-                "test",
-                "test@test.com",
-                1
-        );
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
+        when(customerDao.patchCustomer(id, request, null)).thenReturn(CustomerPatchResult.NO_CHANGES);
         // When
+        //Then
         assertThatThrownBy(() -> underTest.updateCustomer(id, request))
                 .isInstanceOf(RequestValidationException.class)
                 .hasMessage("No data changes found.");
-        //Then
-        verify(customerDao).selectCustomerById(id);
-
-        verify(customerDao, never()).updateCustomer(any());
     }
-}
\ No newline at end of file
+}
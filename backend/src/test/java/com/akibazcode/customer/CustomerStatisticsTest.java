@@ -0,0 +1,118 @@
+package com.akibazcode.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerStatisticsTest {
+
+    private CustomerStatistics underTest;
+
+    @Mock
+    private CustomerDao customerDao;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerStatistics(customerDao);
+    }
+
+    @Test
+    void snapshotIsEmptyWithoutCustomers() {
+        // When
+        CustomerStats actual = underTest.snapshot();
+
+        //Then
+        assertThat(actual.count()).isZero();
+        assertThat(actual.minAge()).isNull();
+        assertThat(actual.maxAge()).isNull();
+        assertThat(actual.meanAge()).isNull();
+        assertThat(actual.ageHistogram()).hasSize(16).allMatch(bucket -> bucket.count() == 0);
+    }
+
+    @Test
+    void snapshotFollowsWrites() {
+        // Given
+        underTest.add(20);
+        underTest.add(25);
+        underTest.add(35);
+        underTest.move(35, 41);
+        underTest.remove(25);
+
+        // When
+        CustomerStats actual = underTest.snapshot();
+
+        //Then
+        assertThat(actual.count()).isEqualTo(2);
+        assertThat(actual.minAge()).isEqualTo(20);
+        assertThat(actual.maxAge()).isEqualTo(41);
+        assertThat(actual.meanAge()).isEqualTo(30.5);
+        assertThat(actual.ageHistogram().get(2)).isEqualTo(new CustomerAgeBucket(20, 29, 1));
+        assertThat(actual.ageHistogram().get(3)).isEqualTo(new CustomerAgeBucket(30, 39, 0));
+        assertThat(actual.ageHistogram().get(4)).isEqualTo(new CustomerAgeBucket(40, 49, 1));
+        assertThat(actual.ageHistogram().get(15)).isEqualTo(new CustomerAgeBucket(150, 150, 0));
+    }
+
+    @Test
+    void reconcileCorrectsDrift() {
+        // Given
+        underTest.add(20);
+        underTest.add(99);
+        when(customerDao.countCustomersByAge()).thenReturn(Map.of(20, 3L, 200, 1L));
+
+        // When
+        underTest.reconcile();
+
+        //Then
+        CustomerStats actual = underTest.snapshot();
+        assertThat(actual.count()).isEqualTo(4);
+        assertThat(actual.minAge()).isEqualTo(20);
+        assertThat(actual.maxAge()).isEqualTo(200);
+        assertThat(actual.meanAge()).isEqualTo(65);
+    }
+
+    @Test
+    void snapshotKeepsOutOfRangeAgesExact() {
+        // Given
+        underTest.add(-5);
+        underTest.add(20);
+        underTest.add(170);
+        underTest.move(170, 200);
+        underTest.add(300);
+        underTest.remove(300);
+
+        // When
+        CustomerStats actual = underTest.snapshot();
+
+        //Then
+        assertThat(actual.count()).isEqualTo(3);
+        assertThat(actual.minAge()).isEqualTo(-5);
+        assertThat(actual.maxAge()).isEqualTo(200);
+        assertThat(actual.meanAge()).isEqualTo(71.66666666666667);
+        assertThat(actual.ageHistogram().get(0)).isEqualTo(new CustomerAgeBucket(0, 9, 1));
+        assertThat(actual.ageHistogram().get(15)).isEqualTo(new CustomerAgeBucket(150, 150, 1));
+    }
+
+    @Test
+    void statsOfCountsKeepOutOfRangeAgesExact() {
+        // When
+        CustomerStats actual = CustomerStatistics.stats(Map.of(-5, 1L, 20, 2L, 200, 1L));
+
+        //Then
+        assertThat(actual.count()).isEqualTo(4);
+        assertThat(actual.minAge()).isEqualTo(-5);
+        assertThat(actual.maxAge()).isEqualTo(200);
+        assertThat(actual.meanAge()).isEqualTo(58.75);
+        assertThat(actual.ageHistogram()).hasSize(16);
+        assertThat(actual.ageHistogram().get(0)).isEqualTo(new CustomerAgeBucket(0, 9, 1));
+        assertThat(actual.ageHistogram().get(2)).isEqualTo(new CustomerAgeBucket(20, 29, 2));
+        assertThat(actual.ageHistogram().get(15)).isEqualTo(new CustomerAgeBucket(150, 150, 1));
+    }
+}
@@ -0,0 +1,135 @@
+package com.akibazcode.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerSuggestIndexTest {
+
+    private CustomerSuggestIndex underTest;
+
+    @Mock
+    private CustomerDao customerDao;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerSuggestIndex(customerDao);
+        // the scan returns customers out of id order
+        doAnswer(invocation -> {
+            Consumer<Customer> action = invocation.getArgument(0);
+            action.accept(new Customer(3, "Maki Akiba", "maki@test.com", 33));
+            action.accept(new Customer(1, "Baki Akiba", "baki@test.com", 35));
+            action.accept(new Customer(2, "Akira Baki", "akira@mail.com", 40));
+            return null;
+        }).when(customerDao).forEachCustomer(any());
+        underTest.rebuild();
+    }
+
+    @Test
+    void suggestRanksNamePrefixFirst() {
+        // When
+        List<CustomerSuggestion> actual = underTest.suggest("aki", 10);
+
+        //Then
+        assertThat(actual).extracting(CustomerSuggestion::id).containsExactly(2, 1, 3);
+    }
+
+    @Test
+    void suggestMatchesEveryQueryWordAsWordPrefix() {
+        // When
+        List<CustomerSuggestion> name = underTest.suggest("Baki A", 10);
+        List<CustomerSuggestion> email = underTest.suggest("maki test", 10);
+        List<CustomerSuggestion> none = underTest.suggest("kib", 10);
+
+        //Then
+        assertThat(name).containsExactly(
+                new CustomerSuggestion(1, "Baki Akiba", "baki@test.com"),
+                new CustomerSuggestion(2, "Akira Baki", "akira@mail.com")
+        );
+        assertThat(email).extracting(CustomerSuggestion::id).containsExactly(3);
+        assertThat(none).isEmpty();
+    }
+
+    @Test
+    void suggestReturnsAtMostLimit() {
+        // When
+        List<CustomerSuggestion> actual = underTest.suggest("a", 2);
+
+        //Then
+        assertThat(actual).extracting(CustomerSuggestion::id).containsExactly(2, 1);
+    }
+
+    @Test
+    void writesAreVisibleImmediately() {
+        // Given
+        underTest.put(new Customer(10, "Zeki", "zeki@test.com", 20));
+        underTest.update(1, "Teki", null);
+        underTest.remove(3);
+
+        // When
+        //Then
+        assertThat(underTest.suggest("zek", 10)).extracting(CustomerSuggestion::id).containsExactly(10);
+        assertThat(underTest.suggest("teki", 10))
+                .containsExactly(new CustomerSuggestion(1, "Teki", "baki@test.com"));
+        // the old name no longer matches, the email still does
+        assertThat(underTest.suggest("baki", 10)).extracting(CustomerSuggestion::id).containsExactly(2, 1);
+        assertThat(underTest.suggest("maki", 10)).isEmpty();
+    }
+
+    @Test
+    void updateDuringRebuildIsKeptWhenTheScanReadsTheOldRow() {
+        // Given
+        // the scan reads a snapshot taken when it started, the update commits before it reaches the row
+        doAnswer(invocation -> {
+            Consumer<Customer> action = invocation.getArgument(0);
+            action.accept(new Customer(3, "Maki Akiba", "maki@test.com", 33));
+            underTest.update(1, "Teki", null);
+            underTest.update(1, null, "teki@test.com");
+            action.accept(new Customer(1, "Baki Akiba", "baki@test.com", 35));
+            return null;
+        }).when(customerDao).forEachCustomer(any());
+
+        // When
+        underTest.rebuild();
+
+        //Then
+        assertThat(underTest.suggest("teki", 10))
+                .containsExactly(new CustomerSuggestion(1, "Teki", "teki@test.com"));
+        assertThat(underTest.suggest("baki", 10)).isEmpty();
+    }
+
+    @Test
+    void largeIdsAndRemovedCustomersDoNotLeakIntoSuggestions() {
+        // Given
+        underTest.put(new Customer(Integer.MAX_VALUE - 1, "Zeki", "zeki@test.com", 20));
+        underTest.remove(Integer.MAX_VALUE - 1);
+        // takes over the slot Zeki left behind
+        underTest.put(new Customer(2_000_000_000, "Zeka", "zeka@test.com", 21));
+
+        // When
+        //Then
+        assertThat(underTest.suggest("zek", 10))
+                .containsExactly(new CustomerSuggestion(2_000_000_000, "Zeka", "zeka@test.com"));
+        assertThat(underTest.suggest("zeki", 10)).isEmpty();
+    }
+
+    @Test
+    void trigramsArePaddedInFront() {
+        assertThat(CustomerSuggestIndex.trigrams("ab", 0)).containsExactly(
+                (long) ' ' << 32 | (long) ' ' << 16 | 'a',
+                (long) ' ' << 32 | (long) 'a' << 16 | 'b'
+        );
+        assertThat(CustomerSuggestIndex.words("Baki.Akiba@Test-1.com"))
+                .containsExactly("baki", "akiba", "test", "1", "com");
+    }
+}
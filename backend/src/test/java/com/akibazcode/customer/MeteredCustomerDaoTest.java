@@ -0,0 +1,101 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.DuplicateResourceException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MeteredCustomerDaoTest {
+
+    private MeteredCustomerDao underTest;
+    private SimpleMeterRegistry meterRegistry;
+
+    @Mock
+    private CustomerDao customerDao;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new MeteredCustomerDao(customerDao, "jdbc", meterRegistry);
+    }
+
+    @Test
+    void selectCustomerByIdIsTimed() {
+        // Given
+        int id = 1;
+        Customer customer = new Customer(id, "baki", "baki@test.com", 35);
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
+
+        // When
+        Optional<Customer> actual = underTest.selectCustomerById(id);
+
+        // Then
+        assertThat(actual).hasValue(customer);
+        assertThat(meterRegistry.get("customer.dao.calls")
+                .tags("dao", "jdbc", "method", "selectCustomerById", "exception", "none")
+                .timer()
+                .count()).isEqualTo(1);
+    }
+
+    @Test
+    void selectAllCustomersRecordsRowsReturned() {
+        // Given
+        when(customerDao.selectAllCustomers()).thenReturn(List.of(
+                new Customer(1, "baki", "baki@test.com", 35),
+                new Customer(2, "maki", "maki@test.com", 33)
+        ));
+
+        // When
+        underTest.selectAllCustomers();
+
+        // Then
+        assertThat(meterRegistry.get("customer.dao.rows")
+                .tags("dao", "jdbc", "method", "selectAllCustomers")
+                .summary()
+                .totalAmount()).isEqualTo(2);
+    }
+
+    @Test
+    void failedCallIsTimedWithException() {
+        // Given
+        Customer customer = new Customer("baki", "baki@test.com", 35);
+        doThrow(new DuplicateResourceException("Email already taken."))
+                .when(customerDao).insertCustomer(customer);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.insertCustomer(customer))
+                .isInstanceOf(DuplicateResourceException.class);
+        assertThat(meterRegistry.get("customer.dao.calls")
+                .tags("dao", "jdbc", "method", "insertCustomer", "exception", "DuplicateResourceException")
+                .timer()
+                .count()).isEqualTo(1);
+    }
+
+    @Test
+    void updateCustomerIsDelegated() {
+        // Given
+        Customer update = new Customer(1, "baki", "baki@test.com", 36);
+
+        // When
+        underTest.updateCustomer(update);
+
+        // Then
+        verify(customerDao).updateCustomer(update);
+        assertThat(meterRegistry.get("customer.dao.calls")
+                .tags("method", "updateCustomer")
+                .timer()
+                .count()).isEqualTo(1);
+    }
+}
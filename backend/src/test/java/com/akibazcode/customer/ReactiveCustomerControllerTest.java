@@ -0,0 +1,35 @@
+package com.akibazcode.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveCustomerControllerTest {
+
+    private WebTestClient webTestClient;
+
+    @Mock
+    private ReactiveCustomerService customerService;
+
+    @BeforeEach
+    void setUp() {
+        webTestClient = WebTestClient.bindToController(new ReactiveCustomerController(customerService)).build();
+    }
+
+    @Test
+    void getCustomersRejectsLimitAndIdsTogether() {
+        // When
+        webTestClient.get()
+                .uri("/api/v1/customers?limit=10&ids=1,2")
+                .exchange()
+        //Then
+                .expectStatus().isBadRequest();
+        verifyNoInteractions(customerService);
+    }
+}
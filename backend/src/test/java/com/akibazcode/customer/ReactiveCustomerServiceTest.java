@@ -0,0 +1,119 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.PreconditionFailedException;
+import com.akibazcode.exception.RequestValidationException;
+import com.akibazcode.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveCustomerServiceTest {
+
+    private ReactiveCustomerService underTest;
+
+    @Mock
+    private ReactiveCustomerDao customerDao;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ReactiveCustomerService(customerDao);
+    }
+
+    @Test
+    void updateCustomerPatchesInOneCall() {
+        // Given
+        CustomerUpdateRequest request = new CustomerUpdateRequest("foo", null, null);
+        when(customerDao.patchCustomer(1, request, 3L)).thenReturn(Mono.just(CustomerPatchResult.updated(20)));
+
+        // When
+        //Then
+        StepVerifier.create(underTest.updateCustomer(1, request, 3L))
+                .verifyComplete();
+        verify(customerDao).patchCustomer(1, request, 3L);
+        verifyNoMoreInteractions(customerDao);
+    }
+
+    @Test
+    void updateCustomerEmitsErrorsOfThePatch() {
+        // Given
+        CustomerUpdateRequest request = new CustomerUpdateRequest("foo", null, null);
+        when(customerDao.patchCustomer(1, request, null)).thenReturn(Mono.just(CustomerPatchResult.NOT_FOUND));
+        when(customerDao.patchCustomer(2, request, null)).thenReturn(Mono.just(CustomerPatchResult.NO_CHANGES));
+        when(customerDao.patchCustomer(3, request, 1L)).thenReturn(Mono.error(new PreconditionFailedException(
+                "Customer with id: [3] has been modified."
+        )));
+
+        // When
+        //Then
+        StepVerifier.create(underTest.updateCustomer(1, request, null))
+                .expectErrorSatisfies(e -> assertThat(e)
+                        .isInstanceOf(ResourceNotFoundException.class)
+                        .hasMessage("Customer with id: [1] not found."))
+                .verify();
+        StepVerifier.create(underTest.updateCustomer(2, request, null))
+                .expectErrorSatisfies(e -> assertThat(e)
+                        .isInstanceOf(RequestValidationException.class)
+                        .hasMessage("No data changes found."))
+                .verify();
+        StepVerifier.create(underTest.updateCustomer(3, request, 1L))
+                .expectError(PreconditionFailedException.class)
+                .verify();
+    }
+
+    @Test
+    void deleteCustomerByIdEmitsNotFoundWhenNothingWasDeleted() {
+        // Given
+        when(customerDao.deleteCustomerById(1)).thenReturn(Mono.just(true));
+        when(customerDao.deleteCustomerById(2, 5L)).thenReturn(Mono.just(false));
+
+        // When
+        //Then
+        StepVerifier.create(underTest.deleteCustomerById(1, null))
+                .verifyComplete();
+        StepVerifier.create(underTest.deleteCustomerById(2, 5L))
+                .expectErrorSatisfies(e -> assertThat(e)
+                        .isInstanceOf(ResourceNotFoundException.class)
+                        .hasMessage("Customer with id: [2] not found."))
+                .verify();
+    }
+
+    @Test
+    void searchCustomersChecksTheRequestBeforeQuerying() {
+        // Given
+        CustomerSearchRequest search = new CustomerSearchRequest(null, null, 40, 20);
+
+        // When
+        //Then
+        StepVerifier.create(underTest.searchCustomers(search, 10))
+                .expectError(RequestValidationException.class)
+                .verify();
+        verifyNoInteractions(customerDao);
+    }
+
+    @Test
+    void getCustomerStatsFromCountsByAge() {
+        // Given
+        when(customerDao.countCustomersByAge()).thenReturn(Mono.just(Map.of(20, 1L, 41, 1L)));
+
+        // When
+        //Then
+        StepVerifier.create(underTest.getCustomerStats())
+                .assertNext(stats -> {
+                    assertThat(stats.count()).isEqualTo(2);
+                    assertThat(stats.minAge()).isEqualTo(20);
+                    assertThat(stats.maxAge()).isEqualTo(41);
+                    assertThat(stats.meanAge()).isEqualTo(30.5);
+                })
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,139 @@
+package com.akibazcode.customer;
+
+import com.akibazcode.exception.ServiceUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+    private static final int CALLERS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallsForSameKeyShareOneExecution() throws Exception {
+        // Given
+        SingleFlight<Integer, String> underTest = new SingleFlight<>("test", Duration.ofSeconds(10));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+
+        // When
+        List<Future<String>> results = callConcurrently(() -> underTest.execute(1, () -> {
+            executions.incrementAndGet();
+            await(release);
+            return "baki";
+        }));
+        waitUntil(() -> underTest.coalescedCount() == CALLERS - 1);
+        release.countDown();
+
+        //Then
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("baki");
+        }
+        assertThat(executions).hasValue(1);
+        assertThat(underTest.executionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void failureIsSharedButNotRemembered() throws Exception {
+        // Given
+        SingleFlight<Integer, String> underTest = new SingleFlight<>("test", Duration.ofSeconds(10));
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = callConcurrently(() -> underTest.execute(1, () -> {
+            await(release);
+            throw new IllegalStateException("database down");
+        }));
+        waitUntil(() -> underTest.coalescedCount() == CALLERS - 1);
+
+        // When
+        release.countDown();
+
+        //Then
+        for (Future<String> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("database down");
+        }
+        assertThat(underTest.execute(1, () -> "baki")).isEqualTo("baki");
+        assertThat(underTest.executionCount()).isEqualTo(2);
+    }
+
+    @Test
+    void waiterGivesUpAfterTimeoutWhileExecutionContinues() throws Exception {
+        // Given
+        SingleFlight<Integer, String> underTest = new SingleFlight<>("test", Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> underTest.execute(1, () -> {
+            started.countDown();
+            await(release);
+            return "baki";
+        }));
+        await(started);
+
+        // When
+        //Then
+        assertThatThrownBy(() -> underTest.execute(1, () -> "maki"))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(underTest.timeoutCount()).isEqualTo(1);
+        release.countDown();
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("baki");
+    }
+
+    @Test
+    void differentKeysDoNotWaitForEachOther() {
+        // Given
+        SingleFlight<Integer, String> underTest = new SingleFlight<>("test", Duration.ofSeconds(10));
+
+        // When
+        String actual = underTest.execute(1, () -> underTest.execute(2, () -> "maki"));
+
+        //Then
+        assertThat(actual).isEqualTo("maki");
+        assertThat(underTest.coalescedCount()).isZero();
+    }
+
+    private List<Future<String>> callConcurrently(Callable<String> call) {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(call));
+        }
+        return results;
+    }
+
+    // callers waiting for the running execution are counted before they block
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
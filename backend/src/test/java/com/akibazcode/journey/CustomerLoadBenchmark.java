@@ -0,0 +1,380 @@
+package com.akibazcode.journey;
+
+import com.akibazcode.Main;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-model load test of the customer API: requests are sent at a fixed arrival rate whatever the response times,
+// and latency is measured from the moment a request was due, so a stalled server shows up in the percentiles
+// instead of quietly lowering the load. The same scenario runs against every dao, each on a fresh app and an
+// empty schema in one Testcontainers Postgres, with the customer cache turned off. The file dao gets a fresh
+// directory. After the run each app is restarted on the data it was left with, the restart time is the cold start
+// with a full store, e.g. the file dao replaying its log against jdbc only opening connections. Compare write
+// throughput with a write-heavy mix, e.g. -Dloadtest.daos=jdbc,file -Dloadtest.mix=post:50,put:40,delete:10.
+// Not run by the build.
+// System properties (defaults): loadtest.daos (jdbc,jpa,list,file), loadtest.customers (10000),
+// loadtest.rate in requests/s (500), loadtest.warmup and loadtest.duration in seconds (10, 30),
+// loadtest.mix (get:60,list:10,post:10,put:15,delete:5), loadtest.report (target/loadtest-report.json)
+public class CustomerLoadBenchmark {
+    // batch registration rejects larger batches
+    private static final int SEED_BATCH_SIZE = 1000;
+    private static final int LIST_PAGE_SIZE = 100;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    enum Endpoint {
+        GET, LIST, POST, PUT, DELETE
+    }
+
+    public static void main(String[] args) throws Exception {
+        Scenario scenario = Scenario.fromSystemProperties();
+        List<DaoReport> runs = new ArrayList<>();
+
+        try (PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer<>("postgres:latest")
+                .withDatabaseName("akibazcode-load-test")
+                .withUsername("akibaz")
+                .withPassword("password")
+                .withCommand("postgres -c max_connections=150")) {
+            postgreSQLContainer.start();
+
+            for (String dao : scenario.daos()) {
+                // every dao starts from an empty schema, flyway recreates the tables on startup
+                resetSchema(postgreSQLContainer);
+                Path fileDirectory = Files.createTempDirectory("customer-load-" + dao);
+                DaoReport run;
+                long startNanos = System.nanoTime();
+                try (ConfigurableApplicationContext context = start(postgreSQLContainer, dao, fileDirectory);
+                     ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+                     HttpClient client = HttpClient.newBuilder()
+                             .version(HttpClient.Version.HTTP_1_1)
+                             .executor(executor)
+                             .build()) {
+                    int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                    URI baseUri = URI.create("http://localhost:%s/api/v1/customers".formatted(port));
+
+                    double startupMs = millis(System.nanoTime() - startNanos);
+
+                    Workload workload = new Workload(client, baseUri, scenario, dao, seed(client, baseUri, scenario.customers()));
+                    workload.run(Duration.ofSeconds(scenario.warmupSeconds()));
+                    run = workload.run(Duration.ofSeconds(scenario.durationSeconds())).withStartupMs(startupMs);
+                }
+
+                long restartNanos = System.nanoTime();
+                try (ConfigurableApplicationContext context = start(postgreSQLContainer, dao, fileDirectory)) {
+                    runs.add(run.withRestartMs(millis(System.nanoTime() - restartNanos)));
+                }
+            }
+        }
+
+        Path report = Path.of(scenario.report());
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(report.toFile(), new Report(scenario, runs));
+
+        System.out.printf("%-6s %-8s %10s %8s %12s %10s %10s %10s%n",
+                "dao", "endpoint", "requests", "errors", "requests/s", "p50 ms", "p99 ms", "p999 ms");
+        for (DaoReport run : runs) {
+            run.endpoints().forEach((endpoint, result) -> System.out.printf("%-6s %-8s %10d %8d %12.1f %10.2f %10.2f %10.2f%n",
+                    run.dao(), endpoint, result.requests(), result.errors(), result.throughput(),
+                    result.p50Ms(), result.p99Ms(), result.p999Ms()));
+        }
+        System.out.printf("%n%-6s %12s %12s%n", "dao", "startup ms", "restart ms");
+        for (DaoReport run : runs) {
+            System.out.printf("%-6s %12.1f %12.1f%n", run.dao(), run.startupMs(), run.restartMs());
+        }
+        System.out.println("Report written to " + report.toAbsolutePath());
+    }
+
+    private static ConfigurableApplicationContext start(
+            PostgreSQLContainer<?> postgreSQLContainer, String dao, Path fileDirectory) {
+        return new SpringApplicationBuilder(Main.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=" + postgreSQLContainer.getJdbcUrl(),
+                        "spring.datasource.username=" + postgreSQLContainer.getUsername(),
+                        "spring.datasource.password=" + postgreSQLContainer.getPassword(),
+                        "spring.jpa.show-sql=false",
+                        "customer.dao=" + dao,
+                        "customer.cache.maximum-size=0",
+                        "customer.file.directory=" + fileDirectory
+                )
+                .run();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static void resetSchema(PostgreSQLContainer<?> postgreSQLContainer) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(DataSourceBuilder.create()
+                .driverClassName(postgreSQLContainer.getDriverClassName())
+                .url(postgreSQLContainer.getJdbcUrl())
+                .username(postgreSQLContainer.getUsername())
+                .password(postgreSQLContainer.getPassword())
+                .build());
+        jdbcTemplate.execute("DROP SCHEMA public CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA public");
+    }
+
+    // registers the customers through the batch endpoint and returns their ids
+    private static int[] seed(HttpClient client, URI baseUri, int customers) throws Exception {
+        int[] ids = new int[customers];
+        int count = 0;
+        for (int offset = 0; offset < customers; offset += SEED_BATCH_SIZE) {
+            List<Map<String, Object>> batch = new ArrayList<>();
+            for (int i = offset; i < Math.min(customers, offset + SEED_BATCH_SIZE); i++) {
+                batch.add(Map.of("name", "seed " + i, "email", "seed-" + i + "@test.com", "age", 20 + i % 50));
+            }
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create(baseUri + "/batch"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(OBJECT_MAPPER.writeValueAsString(batch)))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString()
+            );
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Seeding failed with status " + response.statusCode());
+            }
+            for (JsonNode result : OBJECT_MAPPER.readTree(response.body())) {
+                if (result.hasNonNull("id")) {
+                    ids[count++] = result.get("id").asInt();
+                }
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    private static final class Workload {
+        private final HttpClient client;
+        private final URI baseUri;
+        private final Scenario scenario;
+        private final String dao;
+        private final int[] seededIds;
+        // customers added by POST, DELETE only removes these so reads and updates keep hitting existing rows
+        private final Queue<Integer> createdIds = new ConcurrentLinkedQueue<>();
+        private final AtomicLong sequence = new AtomicLong();
+        private final Endpoint[] endpoints;
+        private final int[] cumulativeWeights;
+
+        Workload(HttpClient client, URI baseUri, Scenario scenario, String dao, int[] seededIds) {
+            this.client = client;
+            this.baseUri = baseUri;
+            this.scenario = scenario;
+            this.dao = dao;
+            this.seededIds = seededIds;
+            this.endpoints = scenario.mix().keySet().toArray(Endpoint[]::new);
+            this.cumulativeWeights = new int[endpoints.length];
+            int total = 0;
+            for (int i = 0; i < endpoints.length; i++) {
+                total += scenario.mix().get(endpoints[i]);
+                cumulativeWeights[i] = total;
+            }
+        }
+
+        DaoReport run(Duration duration) throws InterruptedException {
+            Map<Endpoint, Histogram> histograms = new EnumMap<>(Endpoint.class);
+            Map<Endpoint, LongAdder> errors = new EnumMap<>(Endpoint.class);
+            for (Endpoint endpoint : endpoints) {
+                histograms.put(endpoint, new ConcurrentHistogram(3));
+                errors.put(endpoint, new LongAdder());
+            }
+            LongAdder skipped = new LongAdder();
+            AtomicLong pending = new AtomicLong();
+
+            long start = System.nanoTime();
+            for (long i = 0; ; i++) {
+                long intended = start + (long) (i * 1_000_000_000.0 / scenario.rate());
+                if (intended - start >= duration.toNanos()) {
+                    break;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+
+                Endpoint endpoint = nextEndpoint();
+                HttpRequest request = request(endpoint);
+                if (request == null) {
+                    skipped.increment();
+                    continue;
+                }
+                pending.incrementAndGet();
+                client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, e) -> {
+                    try {
+                        // measured from when the request was due, not from when it was sent
+                        histograms.get(endpoint).recordValue(System.nanoTime() - intended);
+                        if (e != null || response.statusCode() >= 400) {
+                            errors.get(endpoint).increment();
+                        } else if (endpoint == Endpoint.POST) {
+                            createdIds.add(readId(response.body()));
+                        }
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                });
+            }
+
+            // responses still arriving after the last request was sent belong to this run
+            while (pending.get() > 0) {
+                Thread.sleep(10);
+            }
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            Map<String, EndpointReport> endpointReports = new LinkedHashMap<>();
+            for (Endpoint endpoint : endpoints) {
+                Histogram histogram = histograms.get(endpoint);
+                endpointReports.put(endpoint.name().toLowerCase(), new EndpointReport(
+                        histogram.getTotalCount(),
+                        errors.get(endpoint).sum(),
+                        histogram.getTotalCount() / seconds,
+                        millis(histogram.getValueAtPercentile(50)),
+                        millis(histogram.getValueAtPercentile(99)),
+                        millis(histogram.getValueAtPercentile(99.9)),
+                        millis(histogram.getMaxValue())
+                ));
+            }
+            return new DaoReport(dao, skipped.sum(), endpointReports, 0, 0);
+        }
+
+        private Endpoint nextEndpoint() {
+            int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < endpoints.length; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return endpoints[i];
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        // null when there is nothing to send, a DELETE before any POST has completed
+        private HttpRequest request(Endpoint endpoint) {
+            int seededId = seededIds[ThreadLocalRandom.current().nextInt(seededIds.length)];
+            return switch (endpoint) {
+                case GET -> HttpRequest.newBuilder(URI.create(baseUri + "/" + seededId)).GET().build();
+                case LIST -> HttpRequest.newBuilder(URI.create(baseUri + "?limit=" + LIST_PAGE_SIZE)).GET().build();
+                case POST -> json(HttpRequest.newBuilder(baseUri), "POST", Map.of(
+                        "name", "load " + dao,
+                        "email", "load-%s-%s@test.com".formatted(dao, sequence.incrementAndGet()),
+                        "age", 30
+                ));
+                case PUT -> json(HttpRequest.newBuilder(URI.create(baseUri + "/" + seededId)), "PUT", Map.of(
+                        "name", "updated " + sequence.incrementAndGet()
+                ));
+                case DELETE -> {
+                    Integer createdId = createdIds.poll();
+                    yield createdId == null
+                            ? null
+                            : HttpRequest.newBuilder(URI.create(baseUri + "/" + createdId)).DELETE().build();
+                }
+            };
+        }
+
+        private static HttpRequest json(HttpRequest.Builder builder, String method, Map<String, Object> body) {
+            try {
+                return builder.header("Content-Type", "application/json")
+                        .method(method, HttpRequest.BodyPublishers.ofString(OBJECT_MAPPER.writeValueAsString(body)))
+                        .build();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static Integer readId(String body) {
+            try {
+                return OBJECT_MAPPER.readTree(body).get("id").asInt();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    record Scenario(
+            List<String> daos,
+            int customers,
+            double rate,
+            long warmupSeconds,
+            long durationSeconds,
+            Map<Endpoint, Integer> mix,
+            String report
+    ) {
+        static Scenario fromSystemProperties() {
+            Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+            for (String entry : System.getProperty("loadtest.mix", "get:60,list:10,post:10,put:15,delete:5").split(",")) {
+                String[] parts = entry.split(":");
+                mix.put(Endpoint.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+            }
+            return new Scenario(
+                    List.of(System.getProperty("loadtest.daos", "jdbc,jpa,list,file").split(",")),
+                    Integer.getInteger("loadtest.customers", 10_000),
+                    Double.parseDouble(System.getProperty("loadtest.rate", "500")),
+                    Long.getLong("loadtest.warmup", 10),
+                    Long.getLong("loadtest.duration", 30),
+                    mix,
+                    System.getProperty("loadtest.report", "target/loadtest-report.json")
+            );
+        }
+    }
+
+    record EndpointReport(
+            long requests,
+            long errors,
+            double throughput,
+            double p50Ms,
+            double p99Ms,
+            double p999Ms,
+            double maxMs
+    ) {
+    }
+
+    // startupMs on an empty store, restartMs on the store the run left behind
+    record DaoReport(
+            String dao,
+            long skipped,
+            Map<String, EndpointReport> endpoints,
+            double startupMs,
+            double restartMs
+    ) {
+        DaoReport withStartupMs(double startupMs) {
+            return new DaoReport(dao, skipped, endpoints, startupMs, restartMs);
+        }
+
+        DaoReport withRestartMs(double restartMs) {
+            return new DaoReport(dao, skipped, endpoints, startupMs, restartMs);
+        }
+    }
+
+    record Report(Scenario scenario, List<DaoReport> runs) {
+    }
+}
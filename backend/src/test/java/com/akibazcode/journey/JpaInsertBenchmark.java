@@ -0,0 +1,76 @@
+package com.akibazcode.journey;
+
+import com.akibazcode.Main;
+import com.akibazcode.customer.Customer;
+import com.akibazcode.customer.CustomerDao;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Statements sent to the database per customer inserted by the jpa dao, one at a time and through insertCustomers.
+// With ids fetched from the sequence 50 at a time a single insert costs one INSERT plus a fetch every 50 customers
+// instead of a nextval each, and batch inserts go out as JDBC batches of 50. Not run by the build, needs the database
+// from application.yml.
+// Arguments: [customers per run], e.g. 5000
+public class JpaInsertBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    public static void main(String[] args) {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Main.class)
+                .properties(
+                        "server.port=0",
+                        "spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.generate_statistics=true"
+                )
+                .run()) {
+            CustomerDao customerDao = context.getBean("jpa", CustomerDao.class);
+            Statistics statistics = context.getBean(EntityManagerFactory.class)
+                    .unwrap(SessionFactory.class)
+                    .getStatistics();
+
+            // warm up the JIT and the connection pool before measuring
+            for (int i = 0; i < 1000; i++) {
+                customerDao.insertCustomer(newCustomer());
+            }
+
+            System.out.printf("%-16s %10s %14s %12s%n", "mode", "customers", "statements/row", "us/row");
+            statistics.clear();
+            long start = System.nanoTime();
+            for (int i = 0; i < customers; i++) {
+                customerDao.insertCustomer(newCustomer());
+            }
+            print("insertCustomer", customers, statistics, System.nanoTime() - start);
+
+            statistics.clear();
+            start = System.nanoTime();
+            for (int offset = 0; offset < customers; offset += BATCH_SIZE) {
+                List<Customer> batch = new ArrayList<>();
+                for (int i = offset; i < Math.min(customers, offset + BATCH_SIZE); i++) {
+                    batch.add(newCustomer());
+                }
+                customerDao.insertCustomers(batch);
+            }
+            print("insertCustomers", customers, statistics, System.nanoTime() - start);
+        }
+    }
+
+    private static Customer newCustomer() {
+        return new Customer("benchmark", "benchmark-" + UUID.randomUUID() + "@test.com", 30);
+    }
+
+    private static void print(String mode, int customers, Statistics statistics, long nanos) {
+        System.out.printf("%-16s %10d %14.3f %12.1f%n",
+                mode,
+                customers,
+                statistics.getPrepareStatementCount() / (double) customers,
+                nanos / 1000.0 / customers);
+    }
+}
@@ -0,0 +1,134 @@
+package com.akibazcode.journey;
+
+import com.akibazcode.Main;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+// Compares GET /api/v1/customers/{id} throughput and p99 latency of thread-per-request against
+// spring.threads.virtual.enabled=true, with the customer cache turned off so every request reaches the database.
+// Not run by the build, needs the database from application.yml. Arguments: [concurrencies] [seconds per run],
+// e.g. 1000,2500,5000,10000 20
+public class VirtualThreadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] concurrencies = Arrays.stream((args.length > 0 ? args[0] : "1000,2500,5000,10000").split(","))
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 20);
+
+        System.out.printf("%-9s %8s %12s %10s %10s %8s%n", "mode", "clients", "requests/s", "p50 ms", "p99 ms", "errors");
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Main.class)
+                    .properties(
+                            "server.port=0",
+                            "server.tomcat.max-connections=20000",
+                            "server.tomcat.accept-count=10000",
+                            "spring.threads.virtual.enabled=" + virtualThreads,
+                            "spring.jpa.show-sql=false",
+                            "customer.cache.maximum-size=0"
+                    )
+                    .run()) {
+                int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                URI uri = URI.create("http://localhost:%s/api/v1/customers/%s".formatted(port, firstCustomerId(port)));
+
+                // warm up the JIT and the connection pool before measuring
+                run(uri, concurrencies[0], Duration.ofSeconds(5));
+                for (int concurrency : concurrencies) {
+                    Result result = run(uri, concurrency, duration);
+                    System.out.printf("%-9s %8d %12.0f %10.2f %10.2f %8d%n",
+                            virtualThreads ? "virtual" : "platform",
+                            concurrency,
+                            result.latencies.length / (double) duration.toSeconds(),
+                            percentile(result.latencies, 0.50) / 1_000_000.0,
+                            percentile(result.latencies, 0.99) / 1_000_000.0,
+                            result.errors);
+                }
+            }
+        }
+    }
+
+    private static Result run(URI uri, int concurrency, Duration duration) throws Exception {
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<long[]>> clients = new ArrayList<>(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .executor(executor)
+                     .build()) {
+            HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+            for (int i = 0; i < concurrency; i++) {
+                // closed model, every client sends its next request as soon as the previous one completed
+                clients.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.increment();
+                                continue;
+                            }
+                        } catch (Exception e) {
+                            errors.increment();
+                            continue;
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+            long[] latencies = new long[0];
+            for (Future<long[]> future : clients) {
+                long[] clientLatencies = future.get();
+                int offset = latencies.length;
+                latencies = Arrays.copyOf(latencies, offset + clientLatencies.length);
+                System.arraycopy(clientLatencies, 0, latencies, offset, clientLatencies.length);
+            }
+            Arrays.sort(latencies);
+            return new Result(latencies, errors.sum());
+        }
+    }
+
+    private static int firstCustomerId(int port) throws Exception {
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            String body = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:%s/api/v1/customers?limit=1".formatted(port))).build(),
+                    HttpResponse.BodyHandlers.ofString()
+            ).body();
+            int start = body.indexOf("\"id\":") + 5;
+            int end = start;
+            while (Character.isDigit(body.charAt(end))) {
+                end++;
+            }
+            return Integer.parseInt(body.substring(start, end));
+        }
+    }
+
+    private static long percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        return sortedLatencies[(int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile * sortedLatencies.length) - 1)];
+    }
+
+    private record Result(long[] latencies, long errors) {
+    }
+}